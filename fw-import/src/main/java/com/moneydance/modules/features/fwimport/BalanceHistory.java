@@ -0,0 +1,78 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.moneydance.modules.features.fwimport;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.TxnSet;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Balances of one Moneydance account as of any date. The account's
+ * transactions are sorted by date once and accumulated into running
+ * balances, so each date is answered by binary search.
+ */
+class BalanceHistory {
+	private final long startBalance;
+	private final int decimalPlaces;
+	private final int[] dateInts;
+	private final long[] balances;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param account      Moneydance account
+	 * @param transactions The transactions affecting the account
+	 */
+	BalanceHistory(Account account, TxnSet transactions) {
+		this.startBalance = account.getStartBalance();
+		this.decimalPlaces = account.getCurrencyType().getDecimalPlaces();
+		AbstractTxn[] txns = new AbstractTxn[transactions.getSize()];
+		int count = 0;
+
+		for (AbstractTxn txn : transactions) {
+			if (count == txns.length) {
+				txns = Arrays.copyOf(txns, count * 2 + 1);
+			}
+			txns[count++] = txn;
+		} // end for
+		Arrays.sort(txns, 0, count, (a, b) -> Integer.compare(a.getDateInt(), b.getDateInt()));
+		this.dateInts = new int[count];
+		this.balances = new long[count];
+		long balance = this.startBalance;
+
+		for (int i = 0; i < count; ++i) {
+			balance += txns[i].getValue();
+			this.dateInts[i] = txns[i].getDateInt();
+			this.balances[i] = balance;
+		} // end for
+
+	} // end (Account, TxnSet) constructor
+
+	/**
+	 * @param dateInt The date integer of interest
+	 * @return The balance at the end of the date
+	 */
+	BigDecimal getBalance(int dateInt) {
+		int low = 0;
+		int high = this.dateInts.length;
+
+		// find the first transaction after the date
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (this.dateInts[mid] <= dateInt) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		} // end while
+		long balance = low == 0 ? this.startBalance : this.balances[low - 1];
+
+		return BigDecimal.valueOf(balance, this.decimalPlaces);
+	} // end getBalance(int)
+
+} // end class BalanceHistory
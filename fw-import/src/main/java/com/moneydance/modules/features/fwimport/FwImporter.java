@@ -4,7 +4,17 @@
 package com.moneydance.modules.features.fwimport;
 
 import com.infinitekind.moneydance.model.*;
+import com.leastlogic.mdimport.util.AccountIndex;
+import com.leastlogic.mdimport.util.BookIndexes;
+import com.leastlogic.mdimport.util.CsvColumn;
+import com.leastlogic.mdimport.util.CsvDateCache;
 import com.leastlogic.mdimport.util.CsvProcessor;
+import com.leastlogic.mdimport.util.CsvRow;
+import com.leastlogic.mdimport.util.FixedPoint;
+import com.leastlogic.mdimport.util.PriceChangePolicy;
+import com.leastlogic.mdimport.util.PriceStaging;
+import com.leastlogic.mdimport.util.SnapshotCache;
+import com.leastlogic.mdimport.util.TickerIndex;
 import com.leastlogic.moneydance.util.*;
 import com.leastlogic.swing.util.HTMLPane;
 
@@ -12,7 +22,8 @@ import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -23,58 +34,133 @@ import java.util.stream.Collectors;
  * @param accountNumber Account name or number
  * @param ticker        Ticker symbol
  * @param securityName  Security name or description
- * @param shares        Quantity of shares
- * @param price         Price
- * @param balance       Balance or value
+ * @param shares        Quantity of shares, scaled by SCALE
+ * @param price         Price, scaled by SCALE
+ * @param balance       Balance or value, scaled by SCALE
  * @param effectiveDate Effective date
+ * @param effDateInt    Effective date as a Moneydance date integer
  */
 record RowRec(
 	String accountNumber,
 	String ticker,
 	String securityName,
-	BigDecimal shares,
-	BigDecimal price,
-	BigDecimal balance,
-	LocalDate effectiveDate) {
+	long shares,
+	long price,
+	long balance,
+	LocalDate effectiveDate,
+	int effDateInt) {
+
+	/** Decimal places kept for shares, price and balance */
+	static final int SCALE = 8;
 
 } // end record RowRec
 
+/**
+ * Columns read from each row, keyed by the property holding the header text.
+ */
+enum FwColumn implements CsvColumn {
+	ACCOUNT_NUM("col.account.num"),
+	TICKER("col.ticker"),
+	NAME("col.name"),
+	SHARES("col.shares"),
+	PRICE("col.price"),
+	VALUE("col.value"),
+	DATE("col.date");
+
+	private final String propKey;
+
+	FwColumn(String propKey) {
+		this.propKey = propKey;
+
+	} // end (String) constructor
+
+	public String propKey() {
+
+		return this.propKey;
+	} // end propKey()
+
+} // end enum FwColumn
+
+/**
+ * A balance to verify once all rows are processed.
+ *
+ * @param account  Moneydance investment account
+ * @param security The Moneydance security held, or null to check the cash balance
+ * @param imp      Imported record holding the balance
+ */
+record BalanceCheck(Account account, CurrencyType security, RowRec imp) {
+
+} // end record BalanceCheck
+
 /**
  * Module used to import Fidelity NetBenefits workplace account data into
  * Moneydance.
  */
-public class FwImporter extends CsvProcessor implements StagedInterface {
-	private final Account root;
-	private final CurrencyTable securities;
-
-	private final LinkedHashMap<CurrencyType, SecurityHandler> priceChanges = new LinkedHashMap<>();
+public class FwImporter extends CsvProcessor<RowRec> implements StagedInterface {
+	private final BookIndexes indexes;
+	private final TransactionSet transactionSet;
+	private TickerIndex tickers = null;
+	private AccountIndex investAccounts = null;
+	private HoldingsSnapshot holdings = null;
+	private SnapshotCache snapshots = null;
+	private PriceChangePolicy policy = null;
+	private final ArrayList<BalanceCheck> balanceChecks = new ArrayList<>();
+
+	private final PriceStaging priceChanges = new PriceStaging(RowRec.SCALE);
+	private final HashSet<CurrencyType> settled = new HashSet<>();
+	private final HashSet<CurrencyType> suppressed = new HashSet<>();
 	private final LinkedHashSet<LocalDate> dates = new LinkedHashSet<>();
+	private final CsvDateCache dateCache = new CsvDateCache(DateTimeFormatter.ISO_LOCAL_DATE);
 
 	private static final String propertiesFileName = "fw-import.properties";
+	private static final int STAGING_PRECEDENCE = 2;
 	private static final DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("E MMM d, y");
 
 	/**
 	 * Sole constructor.
 	 *
 	 * @param importWindow Our import console
-	 * @param accountBook  Moneydance account book
+	 * @param indexes      Lookup indexes over the Moneydance account book
 	 */
-	public FwImporter(FwImportWindow importWindow, AccountBook accountBook) {
-		super(importWindow, propertiesFileName);
-		this.root = accountBook.getRootAccount();
-		this.securities = accountBook.getCurrencies();
+	public FwImporter(FwImportWindow importWindow, BookIndexes indexes) {
+		super(importWindow, propertiesFileName, FwColumn.values());
+		this.indexes = indexes;
+		this.transactionSet = indexes.getAccountBook().getTransactionSet();
 		importWindow.setStaged(this);
 
-	} // end (FwImportWindow, AccountBook) constructor
+	} // end (FwImportWindow, BookIndexes) constructor
 
 	/**
 	 * Import the selected comma separated value file.
 	 */
 	public void importFile() throws MduException {
-		this.impWin.addText("Importing price data from file %s"
-			.formatted(this.impWin.getFileToImport().getFileName()));
-
+		this.impWin.addText("Importing price data from %s"
+			.formatted(this.impWin.getInputSource().getName()));
+
+		this.tickers = this.indexes.getTickers();
+		this.tickers.forgetUnknown();
+		this.investAccounts = this.indexes.getInvestAccounts();
+		this.investAccounts.forgetUnknown();
+		this.holdings = new HoldingsSnapshot(this.transactionSet,
+			this.investAccounts.getInvestAccounts());
+		this.snapshots = this.indexes.getSnapshots();
+		this.priceChanges.setMemoryBudget(getStagingBudget());
+		this.priceChanges.setRegistry(getStagingRegistry("FW Import", STAGING_PRECEDENCE));
+		this.policy = getChangePolicy();
+		this.settled.clear();
+		this.suppressed.clear();
+		this.balanceChecks.clear();
 		processFile();
+		verifyBalances();
+
+		int numSuppressed = this.suppressed.size();
+
+		if (numSuppressed > 0) {
+			this.impWin.addText("Suppressed %d price change%s under the change policy"
+				.formatted(numSuppressed, numSuppressed == 1 ? "" : "s"));
+		}
+
+		reportDeferred(this.priceChanges);
 		this.impWin.addText("Found effective date%s %s".formatted(this.dates.size() == 1 ? "" : "s",
 			this.dates.stream().map(dt -> dt.format(dateFmt)).collect(Collectors.joining("; "))));
 
@@ -85,87 +171,111 @@ public class FwImporter extends CsvProcessor implements StagedInterface {
 	} // end importFile()
 
 	/**
-	 * Retrieve data from columns in current row
+	 * Retrieve data from columns in a row
+	 * @param row The row to read
 	 * @return Populated RowRec instance
 	 */
-	private RowRec importRow() throws MduException {
+	protected RowRec importRow(CsvRow row) throws MduException {
+		CsvDateCache.ImportDate effectiveDate = this.dateCache.get(row, FwColumn.DATE);
+
 		return new RowRec(
-			getCol("col.account.num"),
-			getCol("col.ticker"),
-			getCol("col.name"),
-			new BigDecimal(getCol("col.shares")),
-			new BigDecimal(getCol("col.price")),
-			new BigDecimal(getCol("col.value")),
-			LocalDate.parse(getCol("col.date")));
-	} // end importRow()
+			row.get(FwColumn.ACCOUNT_NUM),
+			row.get(FwColumn.TICKER),
+			row.get(FwColumn.NAME),
+			row.requireScaled(FwColumn.SHARES, RowRec.SCALE),
+			row.requireScaled(FwColumn.PRICE, RowRec.SCALE),
+			row.requireScaled(FwColumn.VALUE, RowRec.SCALE),
+			effectiveDate.date(),
+			effectiveDate.dateInt());
+	} // end importRow(CsvRow)
 
 	/**
 	 * Import this row of the comma separated value file.
+	 *
+	 * @param imp The record imported from the row
 	 */
-	protected void processRow() throws MduException {
-		RowRec imp = importRow();
-		Optional<Account> account =
-			MdUtil.getSubAccountByInvestNumber(this.root, imp.accountNumber());
-
-		if (account.isEmpty()) {
-			this.impWin.addText("Unable to obtain Moneydance investment account with number [%s]"
-				.formatted(imp.accountNumber()));
-		}
-		CurrencyType security = this.securities.getCurrencyByTickerSymbol(imp.ticker());
-
-		if (security == null) {
-            account.ifPresent(subAcct -> verifyAccountBalance(subAcct, imp));
-		} else {
-			storePriceQuoteIfDiff(security, imp.price(), imp.effectiveDate());
-
-			account.ifPresent(subAcct -> verifyShareBalance(subAcct, security, imp.shares()));
+	protected void processRow(RowRec imp) throws MduException {
+		Optional<Account> account = this.investAccounts.getInvestAccount(imp.accountNumber(),
+			number -> this.impWin.addText(
+				"Unable to obtain Moneydance investment account with number [%s]".formatted(number)));
+		CurrencyType security = this.tickers.getSecurity(imp.ticker());
+
+		// skip securities whose price we already staged or deferred
+		if (security != null && !this.settled.contains(security)) {
+			storePriceQuoteIfDiff(security, imp.price(), imp.effDateInt());
 		}
+		account.ifPresent(subAcct -> this.balanceChecks.add(new BalanceCheck(subAcct, security, imp)));
 		this.dates.add(imp.effectiveDate());
 
-	} // end processRow()
+	} // end processRow(RowRec)
 
 	/**
 	 * @param security      The Moneydance security to use
-	 * @param price         Price found during import
-	 * @param effectiveDate Effective date for quote
+	 * @param scaledPrice   Price found during import, scaled by RowRec.SCALE
+	 * @param effDateInt    Effective date integer for quote
 	 */
-	private void storePriceQuoteIfDiff(CurrencyType security, BigDecimal price,
-									   LocalDate effectiveDate) {
-		int effDateInt = MdUtil.convLocalToDateInt(effectiveDate);
-		SnapshotList ssList = new SnapshotList(security);
-		Optional<CurrencySnapshot> snapshot = ssList.getSnapshotForDate(effDateInt);
+	private void storePriceQuoteIfDiff(CurrencyType security, long scaledPrice,
+									   int effDateInt) throws MduException {
+		BigDecimal price = FixedPoint.toBigDecimal(scaledPrice, RowRec.SCALE);
+		Optional<CurrencySnapshot> snapshot = this.snapshots.getSnapshotForDate(security, effDateInt);
 		BigDecimal oldPrice = snapshot.map(ss ->
 			MdUtil.getAndValidateCurrentSnapshotPrice(security, ss, this.locale, this.impWin::addText))
 			.orElse(BigDecimal.ONE);
+		int lastDateInt = snapshot.map(CurrencySnapshot::getDateInt).orElse(0);
+
+		// store this quote if it differs enough
+		if (this.policy.accepts(lastDateInt, oldPrice, effDateInt, price)) {
+			this.settled.add(security);
+			this.suppressed.remove(security);
+
+			if (!this.priceChanges.add(security, effDateInt, scaledPrice))
+				return; // another import has this price
 
-		// store this quote if it differs and we don't already have this security
-		if ((snapshot.isEmpty() || effDateInt != snapshot.get().getDateInt()
-				|| price.compareTo(oldPrice) != 0) && !this.priceChanges.containsKey(security)) {
 			NumberFormat priceFmt = MdUtil.getCurrencyFormat(this.locale, oldPrice, price);
 			double newPrice = price.doubleValue();
 			this.impWin.addText("Change %s (%s) price from %s to %s (<span class=\"%s\">%+.2f%%</span>)"
 				.formatted(security.getName(), security.getTickerSymbol(),
 				priceFmt.format(oldPrice), priceFmt.format(newPrice),
 				HTMLPane.getSpanCl(price, oldPrice), (newPrice / oldPrice.doubleValue() - 1) * 100));
-
-			addHandler(new SecurityHandler(ssList).storeNewPrice(newPrice, effDateInt));
+		} else if (lastDateInt != effDateInt || price.compareTo(oldPrice) != 0) {
+			// a later row may still change it
+			this.suppressed.add(security);
 		}
 
-	} // end storePriceQuoteIfDiff(CurrencyType, BigDecimal, LocalDate)
+	} // end storePriceQuoteIfDiff(CurrencyType, long, int)
+
+	/**
+	 * Compare the imported balances with the Moneydance balances as of each
+	 * row's effective date, so older files reconcile too.
+	 */
+	private void verifyBalances() {
+		for (BalanceCheck check : this.balanceChecks) {
+			if (check.security() == null) {
+				verifyAccountBalance(check.account(), check.imp());
+			} else {
+				verifyShareBalance(check.account(), check.security(),
+					FixedPoint.toBigDecimal(check.imp().shares(), RowRec.SCALE),
+					check.imp().effDateInt());
+			}
+		} // end for
+		this.balanceChecks.clear();
+
+	} // end verifyBalances()
 
 	/**
 	 * @param account Moneydance account
 	 * @param imp     Imported record from current row
 	 */
 	private void verifyAccountBalance(Account account, RowRec imp) {
-		BigDecimal balance = MdUtil.getCurrentBalance(account);
+		BigDecimal balance = this.holdings.getCashBalance(account, imp.effDateInt());
+		BigDecimal importedBalance = FixedPoint.toBigDecimal(imp.balance(), RowRec.SCALE);
 
-		if (imp.balance().compareTo(balance) != 0) {
-			NumberFormat cf = MdUtil.getCurrencyFormat(this.locale, balance, imp.balance());
+		if (importedBalance.compareTo(balance) != 0) {
+			NumberFormat cf = MdUtil.getCurrencyFormat(this.locale, balance, importedBalance);
 			this.impWin.addText(("Found a different balance in account %s: have %s, imported %s;"
 				+ " Note: No Moneydance security for ticker symbol [%s] (%s)")
 				.formatted(account.getAccountName(), cf.format(balance),
-				cf.format(imp.balance()), imp.ticker(), imp.securityName()));
+				cf.format(importedBalance), imp.ticker(), imp.securityName()));
 		}
 
 	} // end verifyAccountBalance(Account, RowRec)
@@ -174,11 +284,12 @@ public class FwImporter extends CsvProcessor implements StagedInterface {
 	 * @param account        Moneydance account
 	 * @param sec            The Moneydance security to use
 	 * @param importedShares Shares found during import
+	 * @param effDateInt     Effective date integer of the imported shares
 	 */
 	private void verifyShareBalance(Account account, CurrencyType sec,
-									BigDecimal importedShares) {
-		MdUtil.getSubAccountByName(account, sec.getName()).ifPresentOrElse(secAccount -> {
-			BigDecimal balance = MdUtil.getCurrentBalance(secAccount);
+									BigDecimal importedShares, int effDateInt) {
+		this.holdings.getSecurityAccount(account, sec.getName()).ifPresentOrElse(secAccount -> {
+			BigDecimal balance = this.holdings.getShareBalance(secAccount, effDateInt);
 
 			if (importedShares.compareTo(balance) != 0) {
 				NumberFormat nf = MdUtil.getNumberFormat(this.locale, balance, importedShares);
@@ -191,27 +302,15 @@ public class FwImporter extends CsvProcessor implements StagedInterface {
 		() -> this.impWin.addText("Unable to obtain Moneydance security [%s (%s)] in account %s"
 			.formatted(sec.getName(), sec.getTickerSymbol(), account.getAccountName())));
 
-	} // end verifyShareBalance(Account, CurrencyType, BigDecimal)
-
-	/**
-	 * Add a security handler to our collection.
-	 *
-	 * @param handler A deferred update security handler to store
-	 */
-	private void addHandler(SecurityHandler handler) {
-		this.priceChanges.put(handler.getSecurity(), handler);
-
-	} // end addHandler(SecurityHandler)
+	} // end verifyShareBalance(Account, CurrencyType, BigDecimal, int)
 
 	/**
 	 * Commit any changes to Moneydance.
 	 *
 	 * @return Optional summary of the changes committed
 	 */
-	public Optional<String> commitChanges() {
-		int numPricesSet = this.priceChanges.size();
-
-		this.priceChanges.forEach((security, sHandler) -> sHandler.applyUpdate());
+	public Optional<String> commitChanges() throws MduException {
+		int numPricesSet = this.priceChanges.applyUpdates(this.indexes.getSnapshots());
 		forgetChanges();
 
 		return Optional.of("Changed %d security price%s"
@@ -235,4 +334,12 @@ public class FwImporter extends CsvProcessor implements StagedInterface {
 		return !this.priceChanges.isEmpty();
 	} // end isModified()
 
+	/**
+	 * Close this resource, relinquishing any underlying resources.
+	 */
+	public void close() {
+		forgetChanges();
+
+	} // end close()
+
 } // end class FwImporter
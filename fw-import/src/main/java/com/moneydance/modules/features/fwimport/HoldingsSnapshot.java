@@ -0,0 +1,104 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.moneydance.modules.features.fwimport;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.TransactionSet;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Cash and share balances of Moneydance investment accounts as of any date.
+ * The security sub-accounts of each account are collected in one pass, and
+ * each account's balance history is built the first time it is needed.
+ */
+class HoldingsSnapshot {
+	private final TransactionSet transactionSet;
+	private final Set<Account> collected = new HashSet<>();
+	private final Map<Holding, Account> securityAccounts = new HashMap<>();
+	private final Map<Account, BalanceHistory> histories = new HashMap<>();
+
+	/**
+	 * A security held in an investment account.
+	 *
+	 * @param account      Investment account
+	 * @param securityName Name of the security sub-account
+	 */
+	private record Holding(Account account, String securityName) {
+	} // end record Holding
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param transactionSet Moneydance transaction set
+	 * @param investAccounts The investment accounts to collect now
+	 */
+	HoldingsSnapshot(TransactionSet transactionSet, Iterable<Account> investAccounts) {
+		this.transactionSet = transactionSet;
+		investAccounts.forEach(this::collect);
+
+	} // end (TransactionSet, Iterable<Account>) constructor
+
+	/**
+	 * Collect the security sub-accounts of an investment account, once.
+	 *
+	 * @param account Investment account
+	 */
+	private void collect(Account account) {
+		if (this.collected.add(account)) {
+			for (Account secAccount : account.getSubAccounts()) {
+				this.securityAccounts.putIfAbsent(
+					new Holding(account, secAccount.getAccountName()), secAccount);
+			}
+		}
+
+	} // end collect(Account)
+
+	/**
+	 * @param account Moneydance account
+	 * @return The balance history of the account, built on first use
+	 */
+	private BalanceHistory getHistory(Account account) {
+
+		return this.histories.computeIfAbsent(account, acct ->
+			new BalanceHistory(acct, this.transactionSet.getTransactionsForAccount(acct)));
+	} // end getHistory(Account)
+
+	/**
+	 * @param account Investment account
+	 * @param dateInt The date integer of interest
+	 * @return The cash balance of the account at the end of the date
+	 */
+	BigDecimal getCashBalance(Account account, int dateInt) {
+
+		return getHistory(account).getBalance(dateInt);
+	} // end getCashBalance(Account, int)
+
+	/**
+	 * @param account      Investment account
+	 * @param securityName Name of the security sub-account
+	 * @return The security sub-account of the account, if held
+	 */
+	Optional<Account> getSecurityAccount(Account account, String securityName) {
+		collect(account);
+
+		return Optional.ofNullable(this.securityAccounts.get(new Holding(account, securityName)));
+	} // end getSecurityAccount(Account, String)
+
+	/**
+	 * @param secAccount Security sub-account of an investment account
+	 * @param dateInt    The date integer of interest
+	 * @return The share balance of the security at the end of the date
+	 */
+	BigDecimal getShareBalance(Account secAccount, int dateInt) {
+
+		return getHistory(secAccount).getBalance(dateInt);
+	} // end getShareBalance(Account, int)
+
+} // end class HoldingsSnapshot
@@ -0,0 +1,124 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.Account.AccountType;
+import com.leastlogic.moneydance.util.MdUtil;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Thread safe index of the Moneydance investment accounts by account
+ * number, built in one pass over the account tree and kept current as
+ * accounts are added, modified and deleted.
+ */
+public class AccountIndex {
+	private final Account root;
+	private final Map<String, Optional<Account>> accounts = new HashMap<>();
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param root Moneydance root account
+	 */
+	public AccountIndex(Account root) {
+		this.root = root;
+		Deque<Account> pending = new ArrayDeque<>(root.getSubAccounts());
+
+		while (!pending.isEmpty()) {
+			Account account = pending.pop();
+			add(account);
+			pending.addAll(account.getSubAccounts());
+		} // end while
+
+	} // end (Account) constructor
+
+	/**
+	 * Index an account when it is an investment account with a number.
+	 *
+	 * @param account Moneydance account
+	 */
+	private void add(Account account) {
+		String number = account.getInvestAccountNumber();
+
+		if (account.getAccountType() == AccountType.INVESTMENT
+				&& number != null && !number.isBlank()) {
+			// keep the first account with each number
+			this.accounts.putIfAbsent(number.trim(), Optional.of(account));
+		}
+
+	} // end add(Account)
+
+	/**
+	 * @return The investment accounts found in the account tree
+	 */
+	public synchronized List<Account> getInvestAccounts() {
+
+		return this.accounts.values().stream().flatMap(Optional::stream).toList();
+	} // end getInvestAccounts()
+
+	/**
+	 * Numbers missing from the index are looked up once the usual way, so
+	 * every number matches just as it would without the index.
+	 *
+	 * @param number        Investment account number
+	 * @param reportUnknown Called the first time each unknown number is sought
+	 * @return The Moneydance investment account with this number, if any
+	 */
+	public synchronized Optional<Account> getInvestAccount(String number,
+			Consumer<String> reportUnknown) {
+		Optional<Account> account = this.accounts.get(number);
+
+		if (account == null) {
+			account = MdUtil.getSubAccountByInvestNumber(this.root, number);
+			this.accounts.put(number, account);
+
+			if (account.isEmpty()) {
+				reportUnknown.accept(number);
+			}
+		}
+
+		return account;
+	} // end getInvestAccount(String, Consumer<String>)
+
+	/**
+	 * Reflect an added or modified account, whose number may have changed.
+	 *
+	 * @param account Moneydance account
+	 */
+	public synchronized void update(Account account) {
+		remove(account);
+		add(account);
+
+	} // end update(Account)
+
+	/**
+	 * Forget a deleted or changed account, along with any numbers found not
+	 * to match an account, since one of those may match now.
+	 *
+	 * @param account Moneydance account
+	 */
+	public synchronized void remove(Account account) {
+		this.accounts.values().removeIf(indexed ->
+			indexed.isEmpty() || indexed.get().equals(account));
+
+	} // end remove(Account)
+
+	/**
+	 * Forget the numbers found not to match an account, so they are looked up
+	 * and reported again.
+	 */
+	public synchronized void forgetUnknown() {
+		this.accounts.values().removeIf(Optional::isEmpty);
+
+	} // end forgetUnknown()
+
+} // end class AccountIndex
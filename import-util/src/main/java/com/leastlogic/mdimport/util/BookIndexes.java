@@ -0,0 +1,132 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.AccountListener;
+import com.infinitekind.moneydance.model.CurrencyListener;
+import com.infinitekind.moneydance.model.CurrencyTable;
+
+/**
+ * Lookup indexes over one Moneydance account book, kept for as long as the
+ * book is open so successive imports start warm. Account changes update the
+ * account index in place; currency changes discard the ticker index, which
+ * is rebuilt when next needed. Cached snapshots are checked per security
+ * when reused, as currency changes do not say which security changed.
+ */
+public class BookIndexes implements AccountListener, CurrencyListener, AutoCloseable {
+	private final AccountBook accountBook;
+	private final SnapshotCache snapshots = new SnapshotCache();
+	private TickerIndex tickers = null;
+	private AccountIndex investAccounts = null;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param accountBook Moneydance account book
+	 */
+	public BookIndexes(AccountBook accountBook) {
+		this.accountBook = accountBook;
+		accountBook.addAccountListener(this);
+		accountBook.getCurrencies().addCurrencyListener(this);
+
+	} // end (AccountBook) constructor
+
+	/**
+	 * @return The account book we index
+	 */
+	public AccountBook getAccountBook() {
+
+		return this.accountBook;
+	} // end getAccountBook()
+
+	/**
+	 * @return The ticker symbol index, built when first needed
+	 */
+	public synchronized TickerIndex getTickers() {
+		if (this.tickers == null) {
+			this.tickers = new TickerIndex(this.accountBook.getCurrencies());
+		}
+
+		return this.tickers;
+	} // end getTickers()
+
+	/**
+	 * @return The investment account index, built when first needed
+	 */
+	public synchronized AccountIndex getInvestAccounts() {
+		if (this.investAccounts == null) {
+			this.investAccounts = new AccountIndex(this.accountBook.getRootAccount());
+		}
+
+		return this.investAccounts;
+	} // end getInvestAccounts()
+
+	/**
+	 * @return The security snapshot cache
+	 */
+	public SnapshotCache getSnapshots() {
+
+		return this.snapshots;
+	} // end getSnapshots()
+
+	/**
+	 * @param parentAccount The parent of the new account
+	 * @param newAccount    The account added
+	 */
+	public synchronized void accountAdded(Account parentAccount, Account newAccount) {
+		if (this.investAccounts != null) {
+			this.investAccounts.update(newAccount);
+		}
+
+	} // end accountAdded(Account, Account)
+
+	/**
+	 * @param newAccount The account whose balance changed
+	 */
+	public void accountBalanceChanged(Account newAccount) {
+		// balances are not indexed
+
+	} // end accountBalanceChanged(Account)
+
+	/**
+	 * @param parentAccount The former parent of the account
+	 * @param newAccount    The account deleted
+	 */
+	public synchronized void accountDeleted(Account parentAccount, Account newAccount) {
+		if (this.investAccounts != null) {
+			this.investAccounts.remove(newAccount);
+		}
+
+	} // end accountDeleted(Account, Account)
+
+	/**
+	 * @param modifiedAccount The account modified
+	 */
+	public synchronized void accountModified(Account modifiedAccount) {
+		if (this.investAccounts != null) {
+			this.investAccounts.update(modifiedAccount);
+		}
+
+	} // end accountModified(Account)
+
+	/**
+	 * @param table The currency table modified
+	 */
+	public synchronized void currencyTableModified(CurrencyTable table) {
+		this.tickers = null;
+
+	} // end currencyTableModified(CurrencyTable)
+
+	/**
+	 * Stop listening to the account book.
+	 */
+	public void close() {
+		this.accountBook.removeAccountListener(this);
+		this.accountBook.getCurrencies().removeCurrencyListener(this);
+
+	} // end close()
+
+} // end class BookIndexes
@@ -0,0 +1,135 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Word at a time search for the bytes that delimit comma separated values.
+ * Eight bytes are read as one long and every byte equal to a target is
+ * flagged at once, using an exact test with no false positives. The tail
+ * of each range is searched a byte at a time.
+ */
+final class CsvByteScanner {
+	private static final long LOW_SEVEN = 0x7F7F7F7F7F7F7F7FL;
+	private static final long COMMAS = broadcast((byte) ',');
+	private static final long QUOTES = broadcast((byte) '"');
+	private static final long CRS = broadcast((byte) '\r');
+	private static final long LFS = broadcast((byte) '\n');
+
+	/**
+	 * Utility class; no instances.
+	 */
+	private CsvByteScanner() {
+	} // end () constructor
+
+	/**
+	 * @param b The byte to repeat
+	 * @return A long holding the byte in each of its eight bytes
+	 */
+	private static long broadcast(byte b) {
+
+		return (b & 0xFFL) * 0x0101010101010101L;
+	} // end broadcast(byte)
+
+	/**
+	 * @param t A word of bytes
+	 * @return The high bit set in exactly those bytes of the word that are zero
+	 */
+	private static long zeroBytes(long t) {
+
+		return ~(((t & LOW_SEVEN) + LOW_SEVEN) | t | LOW_SEVEN);
+	} // end zeroBytes(long)
+
+	/**
+	 * @param buf   The buffer searched
+	 * @param word  Offset of the word searched
+	 * @param found Nonzero flags marking matching bytes of the word
+	 * @return Offset of the first matching byte
+	 */
+	private static int firstFound(ByteBuffer buf, int word, long found) {
+		int bits = buf.order() == ByteOrder.BIG_ENDIAN
+			? Long.numberOfLeadingZeros(found)
+			: Long.numberOfTrailingZeros(found);
+
+		return word + (bits >>> 3);
+	} // end firstFound(ByteBuffer, int, long)
+
+	/**
+	 * @param buf  The buffer to search by absolute offsets
+	 * @param from Offset of the first byte to search
+	 * @param to   Offset just past the last byte to search
+	 * @return Offset of the first comma, carriage return or line feed, or to when none
+	 */
+	static int indexOfDelimiter(ByteBuffer buf, int from, int to) {
+		int p = from;
+
+		for (; p + Long.BYTES <= to; p += Long.BYTES) {
+			long word = buf.getLong(p);
+			long found = zeroBytes(word ^ COMMAS) | zeroBytes(word ^ CRS) | zeroBytes(word ^ LFS);
+
+			if (found != 0)
+				return firstFound(buf, p, found);
+		}
+		for (; p < to; ++p) {
+			byte b = buf.get(p);
+
+			if (b == ',' || b == '\r' || b == '\n')
+				return p;
+		}
+
+		return to;
+	} // end indexOfDelimiter(ByteBuffer, int, int)
+
+	/**
+	 * @param buf  The buffer to search by absolute offsets
+	 * @param from Offset of the first byte to search
+	 * @param to   Offset just past the last byte to search
+	 * @return Offset of the first quote, or to when none
+	 */
+	static int indexOfQuote(ByteBuffer buf, int from, int to) {
+		int p = from;
+
+		for (; p + Long.BYTES <= to; p += Long.BYTES) {
+			long found = zeroBytes(buf.getLong(p) ^ QUOTES);
+
+			if (found != 0)
+				return firstFound(buf, p, found);
+		}
+		for (; p < to; ++p) {
+			if (buf.get(p) == '"')
+				return p;
+		}
+
+		return to;
+	} // end indexOfQuote(ByteBuffer, int, int)
+
+	/**
+	 * @param buf  The buffer to search by absolute offsets
+	 * @param from Offset of the first byte to search
+	 * @param to   Offset just past the last byte to search
+	 * @return Offset of the first quote, carriage return or line feed, or to when none
+	 */
+	static int indexOfQuoteOrTerminator(ByteBuffer buf, int from, int to) {
+		int p = from;
+
+		for (; p + Long.BYTES <= to; p += Long.BYTES) {
+			long word = buf.getLong(p);
+			long found = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ CRS) | zeroBytes(word ^ LFS);
+
+			if (found != 0)
+				return firstFound(buf, p, found);
+		}
+		for (; p < to; ++p) {
+			byte b = buf.get(p);
+
+			if (b == '"' || b == '\r' || b == '\n')
+				return p;
+		}
+
+		return to;
+	} // end indexOfQuoteOrTerminator(ByteBuffer, int, int)
+
+} // end class CsvByteScanner
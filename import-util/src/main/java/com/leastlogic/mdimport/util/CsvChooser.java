@@ -4,14 +4,16 @@
 package com.leastlogic.mdimport.util;
 
 import java.awt.Component;
+import java.io.File;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.ResourceBundle;
 
 import javax.swing.JFileChooser;
-import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.filechooser.FileFilter;
 
 import com.leastlogic.moneydance.util.MdLog;
 
@@ -22,6 +24,8 @@ public class CsvChooser {
 	private static final String baseMessageBundleName = "com.leastlogic.mdimport.util.MdUtilMessages";
 	private static final ResourceBundle msgBundle = ResourceBundle.getBundle(baseMessageBundleName);
 	private static final String CSV_EXT = "csv";
+	private static final String CSV_GZ_EXT = CSV_EXT + CsvInputSource.GZIP_SUFFIX;
+	private static final String ZIP_EXT = CsvInputSource.ZIP_SUFFIX.substring(1);
 
 	/**
 	 * @param parent root pane
@@ -41,8 +45,17 @@ public class CsvChooser {
 		chooser.setDialogTitle(getTitle());
 		chooser.setApproveButtonToolTipText(msgBundle.getString("CsvChooser.approve.toolTipText"));
 		chooser.setAcceptAllFileFilterUsed(false);
-		chooser.setFileFilter(new FileNameExtensionFilter(
-			msgBundle.getString("CsvChooser.csv.text"), CSV_EXT));
+		chooser.setFileFilter(new FileFilter() {
+			public boolean accept(File file) {
+
+				return file.isDirectory() || isCsvFileName(file.getName());
+			} // end accept(File)
+
+			public String getDescription() {
+
+				return msgBundle.getString("CsvChooser.csv.text");
+			} // end getDescription()
+		});
 		Path defaultFile = getDefaultFile(defaultFileGlobPattern);
 
 		if (defaultFile != null) {
@@ -55,16 +68,28 @@ public class CsvChooser {
 			: null;
 	} // end chooseCsvFile(String)
 
+	/**
+	 * @param fileName The file name to check
+	 * @return True for comma separated value files, plain or compressed
+	 */
+	private static boolean isCsvFileName(String fileName) {
+		String lowerName = fileName.toLowerCase(Locale.ROOT);
+
+		return lowerName.endsWith('.' + CSV_EXT) || lowerName.endsWith('.' + CSV_GZ_EXT)
+			|| lowerName.endsWith('.' + ZIP_EXT);
+	} // end isCsvFileName(String)
+
 	/**
 	 * @param defaultFileGlobPattern The file name pattern for our default
-	 * @return the default file, if a unique one exists matching the supplied glob pattern
+	 * @return the default file, if a unique one exists matching the supplied glob
+	 * pattern with a plain or compressed comma separated value extension
 	 */
 	public Path getDefaultFile(String defaultFileGlobPattern) {
 		Path foundOne = null;
 		int numFound = 0;
 
 		try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(this.defaultDirectory,
-				defaultFileGlobPattern + '.' + CSV_EXT)) {
+				"%s.{%s,%s,%s}".formatted(defaultFileGlobPattern, CSV_EXT, CSV_GZ_EXT, ZIP_EXT))) {
 
 			for (Path path : dirStream) {
 				foundOne = path;
@@ -0,0 +1,30 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+/**
+ * A column an importer reads, identified by the property key holding its
+ * header text. Normally implemented by an enum, so ordinal() is supplied.
+ */
+public interface CsvColumn {
+
+	/**
+	 * @return Property key for column header
+	 */
+	String propKey();
+
+	/**
+	 * @return Zero based position of this column among its importer's columns
+	 */
+	int ordinal();
+
+	/**
+	 * @return True when an import cannot proceed without this column
+	 */
+	default boolean isRequired() {
+
+		return true;
+	} // end isRequired()
+
+} // end interface CsvColumn
@@ -0,0 +1,118 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable mapping from an importer's columns to field indexes in one
+ * comma separated value input, resolved once from its header.
+ */
+public final class CsvColumnPlan {
+	private final int[] fieldIndexes;
+	private final int headerWidth;
+
+	/** Field index of a column that is absent from the file */
+	public static final int ABSENT = -1;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param fieldIndexes Field index for each column ordinal
+	 * @param headerWidth  Number of fields in the header
+	 */
+	private CsvColumnPlan(int[] fieldIndexes, int headerWidth) {
+		this.fieldIndexes = fieldIndexes;
+		this.headerWidth = headerWidth;
+
+	} // end (int[], int) constructor
+
+	/**
+	 * @param columns  The columns the importer reads, in ordinal order
+	 * @param csvProps Properties holding the header text for each column
+	 * @param header   The header fields of the file
+	 * @param name     The name of the input being imported, for diagnostics
+	 * @return A plan locating each column in the file
+	 */
+	public static CsvColumnPlan compile(CsvColumn[] columns, Properties csvProps,
+			String[] header, String name) throws MduException {
+		Map<String, Integer> headerIndexes = new HashMap<>();
+
+		for (int i = 0; i < header.length; ++i) {
+			headerIndexes.put(header[i].trim(), i);
+		}
+		int[] fieldIndexes = new int[columns.length];
+
+		for (CsvColumn column : columns) {
+			String csvColumnKey = csvProps.getProperty(column.propKey());
+			Integer index = csvColumnKey == null ? null : headerIndexes.get(csvColumnKey);
+
+			if (index != null) {
+				fieldIndexes[column.ordinal()] = index;
+			} else if (column.isRequired()) {
+				throw new MduException(null, "Unable to locate column %s (%s) in %s; Found columns %s",
+					csvColumnKey, column.propKey(), name, Arrays.toString(header));
+			} else {
+				fieldIndexes[column.ordinal()] = ABSENT;
+			}
+		} // end for
+
+		return new CsvColumnPlan(fieldIndexes, header.length);
+	} // end compile(CsvColumn[], Properties, String[], String)
+
+	/**
+	 * @param column The importer column
+	 * @return The field index of the column in this file, or ABSENT
+	 */
+	public int indexOf(CsvColumn column) {
+
+		return this.fieldIndexes[column.ordinal()];
+	} // end indexOf(CsvColumn)
+
+	/**
+	 * @param slot A column ordinal
+	 * @return The field index of the column in this file, or ABSENT
+	 */
+	public int fieldIndex(int slot) {
+
+		return this.fieldIndexes[slot];
+	} // end fieldIndex(int)
+
+	/**
+	 * @return The number of importer columns
+	 */
+	public int getColumnCount() {
+
+		return this.fieldIndexes.length;
+	} // end getColumnCount()
+
+	/**
+	 * @return For each header field, true when some column references it
+	 */
+	public boolean[] getReferencedFields() {
+		boolean[] referenced = new boolean[this.headerWidth];
+
+		for (int index : this.fieldIndexes) {
+			if (index != ABSENT) {
+				referenced[index] = true;
+			}
+		} // end for
+
+		return referenced;
+	} // end getReferencedFields()
+
+	/**
+	 * @return The number of fields in the header of this file
+	 */
+	public int getHeaderWidth() {
+
+		return this.headerWidth;
+	} // end getHeaderWidth()
+
+} // end class CsvColumnPlan
@@ -0,0 +1,111 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MdUtil;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe memo of the dates parsed during one import, keyed by the raw
+ * field bytes. Most inputs hold only a few distinct dates, so these are kept
+ * in a small array that is searched without locking or allocation; any
+ * further dates go to a concurrent map.
+ */
+public class CsvDateCache {
+	private final DateTimeFormatter formatter;
+	private volatile Entry[] entries = new Entry[0];
+	private final Map<String, ImportDate> overflow = new ConcurrentHashMap<>();
+
+	private static final int MAX_ENTRIES = 32;
+
+	/**
+	 * A parsed date.
+	 *
+	 * @param date    The local date
+	 * @param dateInt The corresponding Moneydance date integer
+	 */
+	public record ImportDate(LocalDate date, int dateInt) {
+	} // end record ImportDate
+
+	/**
+	 * A raw field and the date parsed from it.
+	 *
+	 * @param raw        Undecoded field bytes
+	 * @param importDate The date parsed from the field
+	 */
+	private record Entry(byte[] raw, ImportDate importDate) {
+	} // end record Entry
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param formatter The format of the dates in the input
+	 */
+	public CsvDateCache(DateTimeFormatter formatter) {
+		this.formatter = formatter;
+
+	} // end (DateTimeFormatter) constructor
+
+	/**
+	 * @param row    The row to read
+	 * @param column The column holding a date
+	 * @return The date in the column, parsed once per distinct field value
+	 */
+	public ImportDate get(CsvRow row, CsvColumn column) throws CsvFieldException {
+		Entry[] known = this.entries;
+
+		for (Entry entry : known) {
+			if (row.rawEquals(column, entry.raw()))
+				return entry.importDate();
+		}
+		if (known.length >= MAX_ENTRIES) {
+			ImportDate importDate = this.overflow.get(row.get(column));
+
+			if (importDate != null)
+				return importDate;
+		}
+		ImportDate importDate = row.get(column, this::parse);
+		remember(row.getRaw(column), row.get(column), importDate);
+
+		return importDate;
+	} // end get(CsvRow, CsvColumn)
+
+	/**
+	 * @param text The date text to parse
+	 * @return The parsed date
+	 */
+	private ImportDate parse(String text) {
+		LocalDate date = LocalDate.parse(text, this.formatter);
+
+		return new ImportDate(date, MdUtil.convLocalToDateInt(date));
+	} // end parse(String)
+
+	/**
+	 * @param raw        Undecoded field bytes
+	 * @param text       The decoded field
+	 * @param importDate The date parsed from the field
+	 */
+	private synchronized void remember(byte[] raw, String text, ImportDate importDate) {
+		Entry[] known = this.entries;
+
+		if (known.length < MAX_ENTRIES) {
+			for (Entry entry : known) {
+				if (Arrays.equals(entry.raw(), raw))
+					return; // another thread got here first
+			}
+			Entry[] grown = Arrays.copyOf(known, known.length + 1);
+			grown[known.length] = new Entry(raw, importDate);
+			this.entries = grown;
+		} else {
+			this.overflow.putIfAbsent(text, importDate);
+		}
+
+	} // end remember(byte[], String, ImportDate)
+
+} // end class CsvDateCache
@@ -0,0 +1,89 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable rule recognizing the first record of trailing text, such as
+ * blank lines and disclaimers, that follows the data in an input. Each
+ * importer configures its rule in its properties file.
+ */
+public final class CsvEndRule {
+	private final boolean blankLine;
+	private final boolean shapeMismatch;
+	private final Pattern marker;
+	private final int headerWidth;
+
+	/** Property key; true to end the data at the first blank line */
+	public static final String BLANK_LINE_KEY = "end.blank.line";
+
+	/** Property key; true to end the data at the first record whose field count differs from the header */
+	public static final String SHAPE_MISMATCH_KEY = "end.shape.mismatch";
+
+	/** Property key; regular expression found in the text of the first record following the data */
+	public static final String MARKER_KEY = "end.marker";
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param blankLine     True to end at a blank line
+	 * @param shapeMismatch True to end at a record shaped unlike the header
+	 * @param marker        Pattern found in the first trailing record, or null
+	 * @param headerWidth   Number of fields in the header
+	 */
+	private CsvEndRule(boolean blankLine, boolean shapeMismatch, Pattern marker, int headerWidth) {
+		this.blankLine = blankLine;
+		this.shapeMismatch = shapeMismatch;
+		this.marker = marker;
+		this.headerWidth = headerWidth;
+
+	} // end (boolean, boolean, Pattern, int) constructor
+
+	/**
+	 * @param csvProps    Properties possibly holding end of data settings
+	 * @param headerWidth Number of fields in the header
+	 * @param name        The name of the input being imported, for diagnostics
+	 * @return The configured rule, or null when the data runs to the end of input
+	 */
+	public static CsvEndRule compile(Properties csvProps, int headerWidth, String name)
+			throws MduException {
+		boolean blankLine = Boolean.parseBoolean(csvProps.getProperty(BLANK_LINE_KEY));
+		boolean shapeMismatch = Boolean.parseBoolean(csvProps.getProperty(SHAPE_MISMATCH_KEY));
+		String markerRegex = csvProps.getProperty(MARKER_KEY, "");
+		Pattern marker = null;
+
+		if (!markerRegex.isEmpty()) {
+			try {
+				marker = Pattern.compile(markerRegex);
+			} catch (PatternSyntaxException e) {
+				throw new MduException(e, "Invalid %s pattern [%s] importing %s: %s",
+					MARKER_KEY, markerRegex, name, e.getDescription());
+			}
+		}
+		if (!blankLine && !shapeMismatch && marker == null)
+			return null;
+
+		return new CsvEndRule(blankLine, shapeMismatch, marker, headerWidth);
+	} // end compile(Properties, int, String)
+
+	/**
+	 * @param csvTokenizer Tokenizer positioned on a record
+	 * @return True when the record is the first one following the data
+	 */
+	public boolean matches(CsvTokenizer csvTokenizer) {
+		if (this.blankLine && csvTokenizer.isBlank())
+			return true;
+
+		if (this.shapeMismatch && csvTokenizer.getFieldCount() != this.headerWidth)
+			return true;
+
+		return this.marker != null && this.marker.matcher(csvTokenizer.getRecordText()).find();
+	} // end matches(CsvTokenizer)
+
+} // end class CsvEndRule
@@ -0,0 +1,102 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collector of the rows skipped by a lenient import, in input order. Only the
+ * first few errors are kept in detail; the rest are just counted.
+ */
+public class CsvErrorCollector {
+	private final int capacity;
+	private final List<RowError> errors = new ArrayList<>();
+	private int errorCount = 0;
+
+	/**
+	 * One skipped row.
+	 *
+	 * @param inputName The name of the input holding the row
+	 * @param rowNumber One based number of the row in the input
+	 * @param column    Property key of the column at fault, or null when unknown
+	 * @param cause     Description of the problem
+	 */
+	public record RowError(String inputName, long rowNumber, String column, String cause) {
+	} // end record RowError
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param capacity The maximum number of errors to keep in detail
+	 */
+	public CsvErrorCollector(int capacity) {
+		this.capacity = capacity;
+
+	} // end (int) constructor
+
+	/**
+	 * Record a row skipped because it could not be converted.
+	 *
+	 * @param inputName The name of the input holding the row
+	 * @param row       The row
+	 * @param e         The exception converting the row
+	 */
+	public void add(String inputName, CsvRow row, Exception e) {
+		if (e instanceof CsvFieldException fieldException) {
+			add(new RowError(inputName, row.getRowNumber(), fieldException.getColumnKey(),
+				"[%s] %s".formatted(fieldException.getValue(), fieldException.getCause())));
+		} else {
+			add(new RowError(inputName, row.getRowNumber(), null, e.toString()));
+		}
+
+	} // end add(String, CsvRow, Exception)
+
+	/**
+	 * @param error The error to record
+	 */
+	private void add(RowError error) {
+		++this.errorCount;
+
+		if (this.errors.size() < this.capacity) {
+			this.errors.add(error);
+		}
+
+	} // end add(RowError)
+
+	/**
+	 * @return The number of rows skipped
+	 */
+	public int getErrorCount() {
+
+		return this.errorCount;
+	} // end getErrorCount()
+
+	/**
+	 * @return Lines summarizing the rows skipped, empty when none were
+	 */
+	public List<String> summarize() {
+		List<String> lines = new ArrayList<>();
+		int count = this.errorCount;
+
+		if (count > 0) {
+			lines.add("Skipped %d row%s with errors".formatted(count, count == 1 ? "" : "s"));
+
+			for (RowError error : this.errors) {
+				lines.add(error.column() == null
+					? "Row %d of %s: %s".formatted(error.rowNumber(), error.inputName(), error.cause())
+					: "Row %d of %s, column %s: %s".formatted(error.rowNumber(), error.inputName(),
+						error.column(), error.cause()));
+			}
+			int unlisted = count - this.errors.size();
+
+			if (unlisted > 0) {
+				lines.add("... and %d more".formatted(unlisted));
+			}
+		}
+
+		return lines;
+	} // end summarize()
+
+} // end class CsvErrorCollector
@@ -0,0 +1,62 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown when a field of comma separated value input cannot be
+ * converted, identifying the row and column at fault.
+ */
+public class CsvFieldException extends MduException {
+	private final String columnKey;
+	private final String value;
+	private final long rowNumber;
+	@Serial
+	private static final long serialVersionUID = 4160215939358311297L;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param cause     The exception converting the field
+	 * @param column    The column holding the field
+	 * @param value     The field value
+	 * @param rowNumber One based number of the row holding the field
+	 */
+	public CsvFieldException(Throwable cause, CsvColumn column, String value, long rowNumber) {
+		super(cause, "Unable to convert %s [%s] in row %d: %s",
+			column.propKey(), value, rowNumber, cause);
+		this.columnKey = column.propKey();
+		this.value = value;
+		this.rowNumber = rowNumber;
+
+	} // end (Throwable, CsvColumn, String, long) constructor
+
+	/**
+	 * @return The property key of the column holding the field
+	 */
+	public String getColumnKey() {
+
+		return this.columnKey;
+	} // end getColumnKey()
+
+	/**
+	 * @return The field value
+	 */
+	public String getValue() {
+
+		return this.value;
+	} // end getValue()
+
+	/**
+	 * @return One based number of the row holding the field
+	 */
+	public long getRowNumber() {
+
+		return this.rowNumber;
+	} // end getRowNumber()
+
+} // end class CsvFieldException
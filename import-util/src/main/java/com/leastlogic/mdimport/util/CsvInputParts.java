@@ -0,0 +1,92 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The opened parts of a comma separated value input source, each with its own
+ * header. Most sources have a single part; a zip archive has one part per
+ * comma separated value entry, decompressed as it is read.
+ */
+public interface CsvInputParts extends AutoCloseable {
+
+	/**
+	 * Advance to the next part. Any previous part is no longer readable.
+	 *
+	 * @return A tokenizer positioned at the first record of the next part,
+	 * or null when no parts remain
+	 */
+	CsvTokenizer nextPart() throws IOException;
+
+	/**
+	 * Close this resource, relinquishing any underlying resources.
+	 */
+	void close() throws IOException;
+
+	/**
+	 * @param tokenizer The tokenizer for the only part
+	 * @return Parts consisting of the single tokenizer
+	 */
+	static CsvInputParts of(CsvTokenizer tokenizer) {
+
+		return new CsvInputParts() {
+			private boolean taken = false;
+
+			public CsvTokenizer nextPart() {
+				if (this.taken)
+					return null;
+
+				this.taken = true;
+
+				return tokenizer;
+			} // end nextPart()
+
+			public void close() throws IOException {
+				tokenizer.close();
+
+			} // end close()
+		};
+	} // end of(CsvTokenizer)
+
+	/**
+	 * @param zipIn The zip archive stream; closed when the parts are closed
+	 * @param name  The name of the archive, for diagnostics
+	 * @return Parts for each comma separated value entry in the archive
+	 */
+	static CsvInputParts ofZip(ZipInputStream zipIn, String name) {
+
+		return new CsvInputParts() {
+			public CsvTokenizer nextPart() throws IOException {
+				ZipEntry entry;
+
+				while ((entry = zipIn.getNextEntry()) != null) {
+					if (!entry.isDirectory()
+							&& entry.getName().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+						InputStream entryIn = new FilterInputStream(zipIn) {
+							public void close() {
+								// leave the archive open for its remaining entries
+							} // end close()
+						};
+
+						return CsvTokenizer.open(entryIn, name + '!' + entry.getName());
+					}
+				} // end while
+
+				return null;
+			} // end nextPart()
+
+			public void close() throws IOException {
+				zipIn.close();
+
+			} // end close()
+		};
+	} // end ofZip(ZipInputStream, String)
+
+} // end interface CsvInputParts
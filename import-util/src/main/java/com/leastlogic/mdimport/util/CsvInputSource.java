@@ -0,0 +1,123 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A source of comma separated value data to import: a file, or any channel or
+ * stream read until it reports end of input, such as the output of a process
+ * producing quote data.
+ */
+public interface CsvInputSource {
+
+	/** File name suffix of gzip compressed files */
+	String GZIP_SUFFIX = ".gz";
+
+	/** File name suffix of zip archives */
+	String ZIP_SUFFIX = ".zip";
+
+	/** Size of the buffers used when decompressing */
+	int BUFFER_SIZE = 64 << 10;
+
+	/**
+	 * @return The name of this source, for diagnostics
+	 */
+	String getName();
+
+	/**
+	 * Open this source. Channel and stream sources can only be opened once.
+	 *
+	 * @return The parts of this source, each positioned at its first record
+	 */
+	CsvInputParts open() throws IOException;
+
+	/**
+	 * @param file The file to read. Names ending in .gz are gunzipped and names
+	 *             ending in .zip have each comma separated value entry read, both
+	 *             decompressing as they are parsed. Other regular files are
+	 *             mapped, while pipes and other special files are streamed.
+	 * @return A source reading the file
+	 */
+	static CsvInputSource of(Path file) {
+
+		return new CsvInputSource() {
+			public String getName() {
+
+				return file.toString();
+			} // end getName()
+
+			public CsvInputParts open() throws IOException {
+				String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+				if (!fileName.endsWith(GZIP_SUFFIX) && !fileName.endsWith(ZIP_SUFFIX))
+					return CsvInputParts.of(CsvTokenizer.open(file));
+
+				InputStream in = Files.newInputStream(file);
+				try {
+					if (fileName.endsWith(GZIP_SUFFIX))
+						return CsvInputParts.of(CsvTokenizer.open(
+							new GZIPInputStream(in, BUFFER_SIZE), getName()));
+
+					return CsvInputParts.ofZip(new ZipInputStream(
+						new BufferedInputStream(in, BUFFER_SIZE)), getName());
+				} catch (IOException | RuntimeException e) {
+					// such as a file that is not really compressed
+					in.close();
+
+					throw e;
+				}
+			} // end open()
+		};
+	} // end of(Path)
+
+	/**
+	 * @param channel The channel to read until it reports end of input
+	 * @param name    The name of the source, for diagnostics
+	 * @return A source reading the channel
+	 */
+	static CsvInputSource of(ReadableByteChannel channel, String name) {
+
+		return new CsvInputSource() {
+			public String getName() {
+
+				return name;
+			} // end getName()
+
+			public CsvInputParts open() throws IOException {
+
+				return CsvInputParts.of(CsvTokenizer.open(channel, name));
+			} // end open()
+		};
+	} // end of(ReadableByteChannel, String)
+
+	/**
+	 * @param in   The stream to read until end of input
+	 * @param name The name of the source, for diagnostics
+	 * @return A source reading the stream
+	 */
+	static CsvInputSource of(InputStream in, String name) {
+
+		return new CsvInputSource() {
+			public String getName() {
+
+				return name;
+			} // end getName()
+
+			public CsvInputParts open() throws IOException {
+
+				return CsvInputParts.of(CsvTokenizer.open(in, name));
+			} // end open()
+		};
+	} // end of(InputStream, String)
+
+} // end interface CsvInputSource
@@ -0,0 +1,288 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the data records of a large memory mapped comma separated value file
+ * on fork-join workers. The file is cut into byte ranges aligned on record
+ * boundaries; each range is tokenized and converted to typed records on its
+ * own worker, and the results are returned in file order.
+ * <p>
+ * Alignment takes one cheap scan per chunk that counts quotes and record
+ * terminators for both possible quote states at the chunk start. A prefix
+ * pass over those counts then fixes each chunk's true quote state, its first
+ * record boundary and the record number of that record. This assumes quotes
+ * appear only around fields, as in RFC 4180, while the tokenizer takes a quote
+ * within an unquoted field literally. So each range is checked to end exactly
+ * where the next one starts, at the record number expected there; from the
+ * first range that does not, the rest of the file is parsed sequentially.
+ */
+public final class CsvParallelParser {
+
+	/** Files at least this long are parsed in parallel */
+	public static final long PARALLEL_THRESHOLD = 4L << 20;
+
+	private static final int MIN_CHUNK_SIZE = 256 << 10;
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	/**
+	 * Counts gathered from one chunk, indexed by the quote state at its start.
+	 *
+	 * @param oddQuotes   True when the chunk holds an odd number of quotes
+	 * @param terminators Record terminators outside quotes, per entry quote state
+	 * @param firstStart  Offset after the first terminator outside quotes, or -1,
+	 *                    per entry quote state
+	 */
+	private record ChunkScan(boolean oddQuotes, int[] terminators, int[] firstStart) {
+	} // end record ChunkScan
+
+	/**
+	 * Outcome of parsing one range.
+	 *
+	 * @param records    The typed records parsed before any end or failure
+	 * @param ended      True when the range reached the end of the data
+	 * @param failure    The conversion failure that stopped the range, or null
+	 * @param position   Offset of the record following the last one parsed
+	 * @param lastNumber One based record number of the last record parsed
+	 * @param <R>        The typed record produced
+	 */
+	private record RangeParse<R>(List<R> records, boolean ended, MduException failure,
+			int position, long lastNumber) {
+	} // end record RangeParse
+
+	/**
+	 * Utility class; no instances.
+	 */
+	private CsvParallelParser() {
+	} // end () constructor
+
+	/**
+	 * @param tokenizer Tokenizer positioned just after the header record
+	 * @return True when the tokenizer's input should be parsed in parallel
+	 */
+	public static boolean isWorthwhile(CsvTokenizer tokenizer) {
+
+		return tokenizer.isMapped() && tokenizer.getLimit() >= PARALLEL_THRESHOLD
+			&& ForkJoinPool.getCommonPoolParallelism() > 1;
+	} // end isWorthwhile(CsvTokenizer)
+
+	/**
+	 * @param tokenizer Mapped tokenizer positioned just after the header record
+	 *                  and projected to the column plan compiled from it
+	 * @param converter Converts each row to a typed record
+	 * @param <R>       The typed record produced
+	 * @return The typed records of the file, in file order
+	 */
+	public static <R> List<R> parse(CsvTokenizer tokenizer, CsvRowConverter<R> converter)
+			throws MduException {
+		ByteBuffer buf = tokenizer.buffer();
+		boolean wordScan = tokenizer.isWordScan();
+		int dataStart = tokenizer.getPosition();
+		int limit = tokenizer.getLimit();
+		int numChunks = (int) Math.max(1, Math.min(
+			ForkJoinPool.getCommonPoolParallelism() * 4L, (limit - dataStart) / MIN_CHUNK_SIZE));
+		int[] bounds = new int[numChunks + 1];
+
+		for (int i = 0; i <= numChunks; ++i) {
+			bounds[i] = dataStart + (int) ((long) (limit - dataStart) * i / numChunks);
+		}
+		List<Callable<ChunkScan>> scans = new ArrayList<>(numChunks);
+
+		for (int i = 0; i < numChunks; ++i) {
+			int from = bounds[i], to = bounds[i + 1];
+			scans.add(() -> scanChunk(buf, from, to, wordScan));
+		}
+		List<ChunkScan> scanned = invokeAll(scans);
+
+		// fix each chunk's entry quote state, first record and its record number
+		int[] starts = new int[numChunks + 1];
+		long[] firstNumbers = new long[numChunks];
+		starts[0] = dataStart;
+		starts[numChunks] = limit;
+		firstNumbers[0] = tokenizer.getRecordNumber() + 1;
+		int entryState = 0;
+		long terminatorsBefore = 0;
+
+		for (int i = 0; i < numChunks; ++i) {
+			ChunkScan scan = scanned.get(i);
+
+			if (i > 0) {
+				starts[i] = scan.firstStart()[entryState];
+				firstNumbers[i] = firstNumbers[0] + terminatorsBefore + 1;
+			}
+			terminatorsBefore += scan.terminators()[entryState];
+			entryState ^= scan.oddQuotes() ? 1 : 0;
+		} // end for
+
+		for (int i = numChunks - 1; i > 0; --i) {
+			// a chunk without a record boundary yields its records to its predecessor
+			if (starts[i] < 0) {
+				starts[i] = starts[i + 1];
+			}
+		} // end for
+		AtomicInteger endChunk = new AtomicInteger(numChunks);
+		List<Callable<RangeParse<R>>> parses = new ArrayList<>(numChunks);
+
+		for (int i = 0; i < numChunks; ++i) {
+			CsvTokenizer range = tokenizer.range(starts[i], starts[i + 1], firstNumbers[i]);
+			int chunk = i;
+			parses.add(() -> parseRange(range, converter, chunk, endChunk));
+		}
+		List<RangeParse<R>> parsed = invokeAll(parses);
+		List<R> records = new ArrayList<>();
+
+		for (int i = 0; i < numChunks; ++i) {
+			RangeParse<R> rangeParse = parsed.get(i);
+
+			if (rangeParse.failure() != null)
+				throw rangeParse.failure();
+
+			records.addAll(rangeParse.records());
+
+			if (rangeParse.ended())
+				break; // later chunks hold trailing text
+
+			if (i + 1 < numChunks && (rangeParse.position() != starts[i + 1]
+					|| rangeParse.lastNumber() != firstNumbers[i + 1] - 1)) {
+				// a quote within a field misaligned the later ranges
+				CsvTokenizer rest = tokenizer.range(rangeParse.position(), limit,
+					rangeParse.lastNumber() + 1);
+				rangeParse = parseSequentially(rest, converter);
+
+				if (rangeParse.failure() != null)
+					throw rangeParse.failure();
+
+				records.addAll(rangeParse.records());
+				break;
+			}
+		} // end for
+
+		return records;
+	} // end parse(CsvTokenizer, CsvRowConverter<R>)
+
+	/**
+	 * @param buf      The mapped file contents
+	 * @param from     Offset of the first byte of the chunk
+	 * @param to       Offset just past the last byte of the chunk
+	 * @param wordScan True to skip to each quote or terminator a word at a time
+	 * @return Quote and terminator counts for the chunk
+	 */
+	private static ChunkScan scanChunk(ByteBuffer buf, int from, int to, boolean wordScan) {
+		int[] terminators = new int[2];
+		int[] firstStart = {-1, -1};
+		int localState = 0;
+
+		for (int p = from; p < to; ++p) {
+			if (wordScan && (p = CsvByteScanner.indexOfQuoteOrTerminator(buf, p, to)) == to)
+				break;
+
+			byte b = buf.get(p);
+
+			if (b == QUOTE) {
+				localState ^= 1;
+			} else if (b == CR || b == LF && (p == 0 || buf.get(p - 1) != CR)) {
+				// outside quotes exactly when the entry state matches the local state
+				++terminators[localState];
+
+				if (firstStart[localState] < 0) {
+					firstStart[localState] =
+						b == CR && p + 1 < buf.limit() && buf.get(p + 1) == LF ? p + 2 : p + 1;
+				}
+			}
+		} // end for
+
+		return new ChunkScan(localState == 1, terminators, firstStart);
+	} // end scanChunk(ByteBuffer, int, int, boolean)
+
+	/**
+	 * Parse one range. A conversion failure is held rather than thrown, since
+	 * it only counts when no earlier range reaches the end of the data.
+	 *
+	 * @param range     Tokenizer limited to one aligned range
+	 * @param converter Converts each row to a typed record
+	 * @param chunk     Zero based index of the range
+	 * @param endChunk  Lowest index of a range found to reach the end of the data
+	 * @param <R>       The typed record produced
+	 * @return The typed records of the range, in file order
+	 */
+	private static <R> RangeParse<R> parseRange(CsvTokenizer range, CsvRowConverter<R> converter,
+			int chunk, AtomicInteger endChunk) throws IOException {
+		List<R> records = new ArrayList<>();
+		try {
+			while (chunk < endChunk.get() && range.next()) {
+				records.add(converter.convert(range.toRow()));
+			}
+		} catch (MduException e) {
+
+			return new RangeParse<>(records, false, e, range.getPosition(), range.getRecordNumber());
+		}
+		if (range.isEnded()) {
+			endChunk.accumulateAndGet(chunk, Math::min);
+		}
+
+		return new RangeParse<>(records, range.isEnded(), null,
+			range.getPosition(), range.getRecordNumber());
+	} // end parseRange(CsvTokenizer, CsvRowConverter<R>, int, AtomicInteger)
+
+	/**
+	 * Parse the rest of the file on this thread.
+	 *
+	 * @param rest      Tokenizer limited to the rest of the file
+	 * @param converter Converts each row to a typed record
+	 * @param <R>       The typed record produced
+	 * @return The typed records of the rest of the file, in file order
+	 */
+	private static <R> RangeParse<R> parseSequentially(CsvTokenizer rest,
+			CsvRowConverter<R> converter) throws MduException {
+		try {
+
+			return parseRange(rest, converter, 0, new AtomicInteger(1));
+		} catch (IOException e) {
+			throw new MduException(e, "Exception reading from %s", rest.getName());
+		}
+	} // end parseSequentially(CsvTokenizer, CsvRowConverter<R>)
+
+	/**
+	 * @param tasks The tasks to run on fork-join workers
+	 * @param <T>   The result type of each task
+	 * @return The task results, in task order
+	 */
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws MduException {
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MduException mduException)
+				throw mduException;
+
+			if (e.getCause() instanceof RuntimeException runtimeException)
+				throw runtimeException;
+
+			throw new MduException(e.getCause(), "Exception parsing in parallel: %s", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new MduException(e, "Interrupted parsing in parallel");
+		}
+
+		return results;
+	} // end invokeAll(List<Callable<T>>)
+
+} // end class CsvParallelParser
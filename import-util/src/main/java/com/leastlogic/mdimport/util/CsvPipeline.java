@@ -0,0 +1,182 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the stages of importing one part of the input on their own virtual
+ * threads, connected by bounded queues. Streamed input is read ahead, rows are
+ * tokenized, then converted to typed records, and the records are handed to
+ * the caller's thread in input order. A full queue blocks the stage feeding
+ * it, so the rows and records in flight between stages stay bounded however
+ * large the input; any records the sink keeps are its own to bound. The first
+ * failure in any stage stops the pipeline and is thrown to the caller once the
+ * records preceding it have been accepted.
+ */
+public final class CsvPipeline {
+
+	/** Default number of batches of rows held between stages */
+	public static final int DEFAULT_DEPTH = 16;
+
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * Utility class; no instances.
+	 */
+	private CsvPipeline() {
+	} // end () constructor
+
+	/**
+	 * @param tokenizer Tokenizer positioned just after the header record; only
+	 *                  used by the pipeline until this method returns
+	 * @param converter Converts each row to a typed record, on its own thread
+	 * @param sink      Accepts each typed record, on the caller's thread
+	 * @param depth     The number of batches of rows held between stages
+	 * @param <T>       The typed record produced
+	 */
+	public static <T> void run(CsvTokenizer tokenizer, CsvRowConverter<T> converter,
+			CsvRecordSink<T> sink, int depth) throws MduException {
+		String name = tokenizer.getName();
+		tokenizer.readAhead(depth);
+		BlockingQueue<List<CsvRow>> rows = new ArrayBlockingQueue<>(depth);
+		BlockingQueue<List<T>> recs = new ArrayBlockingQueue<>(depth);
+		List<CsvRow> rowsEnd = new ArrayList<>();
+		List<T> recsEnd = new ArrayList<>();
+		AtomicReference<Exception> failure = new AtomicReference<>();
+
+		Thread tokenizeStage = Thread.ofVirtual().name("tokenize " + name)
+			.start(() -> tokenize(tokenizer, rows, rowsEnd, failure));
+		Thread convertStage = Thread.ofVirtual().name("convert " + name)
+			.start(() -> convert(rows, rowsEnd, converter, recs, recsEnd, failure));
+		try {
+			List<T> batch;
+
+			while ((batch = recs.take()) != recsEnd) {
+				for (T rec : batch) {
+					sink.accept(rec);
+				}
+			} // end while
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new MduException(e, "Interrupted importing %s", name);
+		} finally {
+			stop(tokenizeStage);
+			stop(convertStage);
+		}
+		Exception e = failure.get();
+
+		if (e instanceof MduException mduException)
+			throw mduException;
+
+		if (e instanceof RuntimeException runtimeException)
+			throw runtimeException;
+
+	} // end run(CsvTokenizer, CsvRowConverter<T>, CsvRecordSink<T>, int)
+
+	/**
+	 * Tokenize stage; pass on batches of rows, then the end marker.
+	 *
+	 * @param tokenizer The tokenizer to read
+	 * @param rows      The queue to the convert stage
+	 * @param rowsEnd   The end marker
+	 * @param failure   Holds the first failure of any stage
+	 */
+	private static void tokenize(CsvTokenizer tokenizer, BlockingQueue<List<CsvRow>> rows,
+			List<CsvRow> rowsEnd, AtomicReference<Exception> failure) {
+		try {
+			List<CsvRow> batch = new ArrayList<>(BATCH_SIZE);
+			try {
+				while (tokenizer.next()) {
+					batch.add(tokenizer.toRow());
+
+					if (batch.size() == BATCH_SIZE) {
+						rows.put(batch);
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				} // end while
+			} catch (InterruptedException e) {
+
+				throw e;
+			} catch (Exception e) {
+				failure.compareAndSet(null,
+					new MduException(e, "Exception reading from %s", tokenizer.getName()));
+			}
+			if (!batch.isEmpty()) {
+				rows.put(batch);
+			}
+			rows.put(rowsEnd);
+		} catch (InterruptedException e) { /* stopped */ }
+
+	} // end tokenize(CsvTokenizer, BlockingQueue<List<CsvRow>>, List<CsvRow>, AtomicReference<Exception>)
+
+	/**
+	 * Convert stage; pass on batches of typed records, then the end marker.
+	 *
+	 * @param rows      The queue from the tokenize stage
+	 * @param rowsEnd   The end marker of the tokenize stage
+	 * @param converter Converts each row to a typed record
+	 * @param recs      The queue to the caller
+	 * @param recsEnd   The end marker
+	 * @param failure   Holds the first failure of any stage
+	 */
+	private static <T> void convert(BlockingQueue<List<CsvRow>> rows, List<CsvRow> rowsEnd,
+			CsvRowConverter<T> converter, BlockingQueue<List<T>> recs, List<T> recsEnd,
+			AtomicReference<Exception> failure) {
+		try {
+			List<CsvRow> batch;
+			List<T> converted = new ArrayList<>();
+			try {
+				while ((batch = rows.take()) != rowsEnd) {
+					converted = new ArrayList<>(batch.size());
+
+					for (CsvRow row : batch) {
+						converted.add(converter.convert(row));
+					}
+					recs.put(converted);
+					converted = new ArrayList<>();
+				} // end while
+			} catch (MduException | RuntimeException e) {
+				failure.compareAndSet(null, e);
+			}
+			if (!converted.isEmpty()) {
+				// the records converted before the failure
+				recs.put(converted);
+			}
+			recs.put(recsEnd);
+		} catch (InterruptedException e) { /* stopped */ }
+
+	} // end convert(BlockingQueue<List<CsvRow>>, List<CsvRow>, CsvRowConverter<T>, BlockingQueue<List<T>>, List<T>, AtomicReference<Exception>)
+
+	/**
+	 * Stop a stage, if still running, and wait for it to finish.
+	 *
+	 * @param stage The thread running the stage
+	 */
+	private static void stop(Thread stage) {
+		stage.interrupt();
+		boolean interrupted = false;
+
+		while (stage.isAlive()) {
+			try {
+				stage.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		} // end while
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+	} // end stop(Thread)
+
+} // end class CsvPipeline
@@ -13,6 +13,14 @@ public interface CsvProcessWindow {
 	 */
 	Path getFileToImport();
 
+	/**
+	 * @return The source of the data to import, by default the file selected to import
+	 */
+	default CsvInputSource getInputSource() {
+
+		return CsvInputSource.of(getFileToImport());
+	} // end getInputSource()
+
 	/**
 	 * @param text HTML-text to append to the output log text area
 	 */
@@ -6,156 +6,388 @@ package com.leastlogic.mdimport.util;
 import com.leastlogic.moneydance.util.MdUtil;
 import com.leastlogic.moneydance.util.MduException;
 
-import java.io.BufferedReader;
-import java.nio.file.Files;
-import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Properties;
 
-public abstract class CsvProcessor implements AutoCloseable {
+/**
+ * Base for importers of comma separated value files. Each row is converted to
+ * a typed record, then the records are processed in file order.
+ *
+ * @param <R> The typed record an importer converts each row to
+ */
+public abstract class CsvProcessor<R> implements AutoCloseable {
 	protected final CsvProcessWindow impWin;
 	protected final Locale locale;
 	private final String propertiesFileName;
+	private final CsvColumn[] columns;
 
-	private final Map<String, String> csvRowMap = new LinkedHashMap<>();
 	private Properties csvProps = null;
+	private PriceChangePolicy changePolicy = null;
+	private StagingRegistry stagingRegistry = null;
+	private CsvErrorCollector errors = null;
+
+	/** Property key; true to skip rows that cannot be converted rather than stop */
+	public static final String LENIENT_KEY = "import.lenient";
+
+	/** Property key; the number of skipped rows to describe in a lenient import */
+	public static final String MAX_ERRORS_KEY = "import.max.errors";
+
+	/** Property key; true to search for delimiters eight bytes at a time */
+	public static final String WORD_SCAN_KEY = "import.word.scan";
+
+	/** Property key; true to read, tokenize and convert rows on their own threads */
+	public static final String PIPELINE_KEY = "import.pipeline";
+
+	/** Property key; the number of batches of rows held between pipeline stages */
+	public static final String PIPELINE_DEPTH_KEY = "import.pipeline.depth";
+
+	/** Property key; megabytes of staged prices to hold in memory before spilling to disk */
+	public static final String STAGING_BUDGET_KEY = "import.staging.budget.mb";
 
-	private static final char DOUBLE_QUOTE = '"';
+	/** Property key; precedence of this import's staged prices over other imports' */
+	public static final String STAGING_PRECEDENCE_KEY = "import.staging.precedence";
+
+	private static final int DEFAULT_MAX_ERRORS = 20;
+
+	/**
+	 * Outcome of converting one row.
+	 *
+	 * @param rec     The typed record, or null when conversion failed
+	 * @param row     The row that failed to convert, or null
+	 * @param failure The exception converting the row, or null
+	 * @param <T>     The typed record produced
+	 */
+	private record Conversion<T>(T rec, CsvRow row, Exception failure) {
+	} // end record Conversion
 
 	/**
 	 * Sole constructor.
 	 *
 	 * @param importWindow       Our import console
 	 * @param propertiesFileName Our properties file name
+	 * @param columns            The columns we read, in ordinal order
 	 */
-	protected CsvProcessor(CsvProcessWindow importWindow, String propertiesFileName) {
+	protected CsvProcessor(CsvProcessWindow importWindow, String propertiesFileName,
+						   CsvColumn[] columns) {
 		this.impWin = importWindow;
 		this.locale = importWindow.getLocale();
 		this.propertiesFileName = propertiesFileName;
+		this.columns = columns;
 		importWindow.addCloseableResource(this);
 
-	} // end (CsvProcessWindow, Locale, String, String) constructor
+	} // end (CsvProcessWindow, String, CsvColumn[]) constructor
 
 	/**
-	 * Import this row of the comma separated value file.
+	 * Convert a row of the comma separated value file to a typed record. Large
+	 * files are converted on several threads at once, so implementations must
+	 * not modify importer state.
+	 *
+	 * @param row The row to convert
+	 * @return The typed record for the row
 	 */
-	abstract protected void processRow() throws MduException;
+	abstract protected R importRow(CsvRow row) throws MduException;
 
 	/**
-	 * Process each row in the selected comma separated value file.
+	 * Import this record from the comma separated value file. Records are
+	 * processed one at a time, in file order.
+	 *
+	 * @param rec The record to import
+	 */
+	abstract protected void processRow(R rec) throws MduException;
+
+	/**
+	 * Process each row of the input selected to import. Each part of the input,
+	 * such as each entry of a zip archive, has its own header. Mapped files of
+	 * at least CsvParallelParser.PARALLEL_THRESHOLD bytes are tokenized and
+	 * converted in parallel; other input sequentially until end of input, in a
+	 * pipeline of stages on their own threads when so configured. In a
+	 * lenient import, rows that cannot be converted are skipped and summarized
+	 * at the end.
 	 */
 	protected void processFile() throws MduException {
-		BufferedReader reader = openFile();
-		if (reader == null)
+		CsvInputParts parts = openInput();
+		if (parts == null)
 			return; // nothing to import
 
+		this.errors = isLenient() ? new CsvErrorCollector(getMaxErrors()) : null;
 		try {
-			String[] header = readLine(reader);
-
-			while (hasMore(reader)) {
-				String[] values = readLine(reader);
-
-				if (header != null && values != null) {
-					this.csvRowMap.clear();
+			CsvTokenizer csvTokenizer;
 
-					for (int i = 0; i < header.length; ++i) {
-						if (i < values.length) {
-							this.csvRowMap.put(header[i], values[i]);
-						} else {
-							this.csvRowMap.put(header[i], "");
-						}
-					} // end for
-
-					processRow();
+			while ((csvTokenizer = nextPart(parts)) != null) {
+				try {
+					processPart(csvTokenizer);
+				} finally {
+					close(csvTokenizer);
 				}
 			} // end while
 		} finally {
-			close(reader);
+			close(parts);
+		}
+		if (this.errors != null) {
+			this.errors.summarize().forEach(this.impWin::addText);
 		}
 
 	} // end processFile()
 
 	/**
-	 * @param propKey Property key for column header
-	 * @return Value from the csv row map with any surrounding double quotes removed
+	 * Process each row of one part of the input selected to import.
+	 *
+	 * @param csvTokenizer The tokenizer for the part, positioned at its header
 	 */
-	protected String getCol(String propKey) throws MduException {
-		String csvColumnKey = getCsvProps().getProperty(propKey);
-		String val = this.csvRowMap.get(csvColumnKey);
-		if (val == null) {
-			throw new MduException(null, "Unable to locate column %s (%s) in %s; Found columns %s",
-				csvColumnKey, propKey, this.impWin.getFileToImport(), this.csvRowMap.keySet());
-		}
-		int quoteLoc = val.indexOf(DOUBLE_QUOTE);
-
-		if (quoteLoc == 0) {
-			// starts with a double quote
-			quoteLoc = val.lastIndexOf(DOUBLE_QUOTE);
+	private void processPart(CsvTokenizer csvTokenizer) throws MduException {
+		if (readHeader(csvTokenizer)) {
+			String name = csvTokenizer.getName();
 
-			if (quoteLoc == val.length() - 1) {
-				// also ends with a double quote => remove them
-				val = val.substring(1, quoteLoc);
+			if (CsvParallelParser.isWorthwhile(csvTokenizer)) {
+				for (Conversion<R> conversion : CsvParallelParser.parse(csvTokenizer, this::convert)) {
+					accept(conversion, name);
+				}
+			} else if (isPipelined()) {
+				CsvPipeline.run(csvTokenizer, this::convert,
+					conversion -> accept(conversion, name), getPipelineDepth());
+			} else {
+				while (nextRecord(csvTokenizer)) {
+					accept(convert(csvTokenizer.toRow()), name);
+				}
 			}
 		}
 
-		return val.trim();
-	} // end getCol(String)
+	} // end processPart(CsvTokenizer)
 
 	/**
-	 * @return A buffered reader to read from the file selected to import
+	 * Convert a row, holding any failure when the import is lenient.
+	 *
+	 * @param row The row to convert
+	 * @return The outcome of converting the row
 	 */
-	private BufferedReader openFile() {
-		BufferedReader reader = null;
+	private Conversion<R> convert(CsvRow row) throws MduException {
 		try {
-			reader = Files.newBufferedReader(this.impWin.getFileToImport());
-		} catch (Exception e) {
-			this.impWin.addText("Exception opening file %s: %s"
-				.formatted(this.impWin.getFileToImport(), e));
+
+			return new Conversion<>(importRow(row), null, null);
+		} catch (MduException | RuntimeException e) {
+			if (this.errors == null)
+				throw e;
+
+			return new Conversion<>(null, row, e);
 		}
+	} // end convert(CsvRow)
 
-		return reader;
-	} // end openFile()
+	/**
+	 * Process a converted record, or collect the failure to convert it.
+	 *
+	 * @param conversion The outcome of converting a row
+	 * @param name       The name of the input holding the row
+	 */
+	private void accept(Conversion<R> conversion, String name) throws MduException {
+		if (conversion.failure() == null) {
+			processRow(conversion.rec());
+		} else {
+			this.errors.add(name, conversion.row(), conversion.failure());
+		}
+
+	} // end accept(Conversion<R>, String)
 
 	/**
-	 * @param reader The buffered reader for the file we are importing
-	 * @return True when the next read will not block for input, false otherwise
+	 * Read the header, then project the tokenizer to the columns we reference,
+	 * so unreferenced fields are skipped without building values for them, and
+	 * have it stop at any configured end of the data and scan as configured.
+	 *
+	 * @param csvTokenizer The tokenizer for the input we are importing
+	 * @return True when a header was found, false for empty input
 	 */
-	private boolean hasMore(BufferedReader reader) throws MduException {
+	private boolean readHeader(CsvTokenizer csvTokenizer) throws MduException {
+		if (!nextRecord(csvTokenizer))
+			return false;
+
+		String[] header = csvTokenizer.getFields();
+		csvTokenizer.project(CsvColumnPlan.compile(this.columns, getCsvProps(),
+			header, csvTokenizer.getName()));
+		csvTokenizer.endAt(CsvEndRule.compile(getCsvProps(), header.length,
+			csvTokenizer.getName()));
+		csvTokenizer.scanWords(isPropertySet(WORD_SCAN_KEY));
+
+		return true;
+	} // end readHeader(CsvTokenizer)
+
+	/**
+	 * @param csvTokenizer The tokenizer for the input we are importing
+	 * @return True when another record was found, false at end of input
+	 */
+	private static boolean nextRecord(CsvTokenizer csvTokenizer) throws MduException {
 		try {
 
-			return reader.ready();
+			return csvTokenizer.next();
+		} catch (Exception e) {
+			throw new MduException(e, "Exception reading from %s", csvTokenizer.getName());
+		}
+	} // end nextRecord(CsvTokenizer)
+
+	/**
+	 * @return The parts of the input selected to import
+	 */
+	private CsvInputParts openInput() {
+		CsvInputSource source = this.impWin.getInputSource();
+		CsvInputParts parts = null;
+		try {
+			parts = source.open();
 		} catch (Exception e) {
-			throw new MduException(e, "Exception checking file %s", this.impWin.getFileToImport());
+			this.impWin.addText("Exception opening %s: %s".formatted(source.getName(), e));
 		}
-	} // end hasMore(BufferedReader)
+
+		return parts;
+	} // end openInput()
 
 	/**
-	 * @param reader The buffered reader for the file we are importing
-	 * @return The comma separated tokens from the next line in the file
+	 * @param parts The parts of the input we are importing
+	 * @return A tokenizer for the next part, or null when no parts remain
 	 */
-	private String[] readLine(BufferedReader reader) throws MduException {
+	private static CsvTokenizer nextPart(CsvInputParts parts) throws MduException {
 		try {
-			String line = reader.readLine();
 
-			return line == null ? null : line.split(",");
+			return parts.nextPart();
 		} catch (Exception e) {
-			throw new MduException(e, "Exception reading from file %s",
-				this.impWin.getFileToImport());
+			throw new MduException(e, "Exception reading input: %s", e);
 		}
-	} // end readLine(BufferedReader)
+	} // end nextPart(CsvInputParts)
 
 	/**
-	 * Close the specified reader, ignoring any exceptions.
+	 * Close the specified resource, ignoring any exceptions.
 	 *
-	 * @param reader The buffered reader for the file we are importing
+	 * @param closeable The tokenizer or parts of the input we are importing
 	 */
-	private static void close(BufferedReader reader) {
+	private static void close(AutoCloseable closeable) {
 		try {
-			reader.close();
+			closeable.close();
 		} catch (Exception e) { /* ignore */ }
 
-	} // end close(BufferedReader)
+	} // end close(AutoCloseable)
+
+	/**
+	 * @return True when rows that cannot be converted are to be skipped
+	 */
+	private boolean isLenient() throws MduException {
+
+		return isPropertySet(LENIENT_KEY);
+	} // end isLenient()
+
+	/**
+	 * @return The policy deciding which price changes to stage, from our properties
+	 */
+	protected PriceChangePolicy getChangePolicy() throws MduException {
+		if (this.changePolicy == null) {
+			this.changePolicy = PriceChangePolicy.compile(getCsvProps(), this.propertiesFileName);
+		}
+
+		return this.changePolicy;
+	} // end getChangePolicy()
+
+	/**
+	 * @param key The property key
+	 * @return True when the property is set to true
+	 */
+	protected boolean isPropertySet(String key) throws MduException {
+
+		return Boolean.parseBoolean(getCsvProps().getProperty(key));
+	} // end isPropertySet(String)
+
+	/**
+	 * @return The number of skipped rows to describe
+	 */
+	private int getMaxErrors() throws MduException {
+
+		return getIntProperty(MAX_ERRORS_KEY, DEFAULT_MAX_ERRORS);
+	} // end getMaxErrors()
+
+	/**
+	 * @return True when rows are to be read, tokenized and converted on their own threads
+	 */
+	private boolean isPipelined() throws MduException {
+
+		return isPropertySet(PIPELINE_KEY);
+	} // end isPipelined()
+
+	/**
+	 * @return The number of batches of rows held between pipeline stages
+	 */
+	private int getPipelineDepth() throws MduException {
+		int depth = getIntProperty(PIPELINE_DEPTH_KEY, CsvPipeline.DEFAULT_DEPTH);
+
+		if (depth < 1)
+			throw new MduException(null, "Invalid %s value [%d] in %s",
+				PIPELINE_DEPTH_KEY, depth, this.propertiesFileName);
+
+		return depth;
+	} // end getPipelineDepth()
+
+	/**
+	 * @return Approximate heap bytes of prices each staging store holds before
+	 * spilling them to disk, or Long.MAX_VALUE when there is no budget
+	 */
+	protected long getStagingBudget() throws MduException {
+		int megabytes = getIntProperty(STAGING_BUDGET_KEY, 0);
+
+		if (megabytes < 0)
+			throw new MduException(null, "Invalid %s value [%d] in %s",
+				STAGING_BUDGET_KEY, megabytes, this.propertiesFileName);
+
+		return megabytes == 0 ? Long.MAX_VALUE : (long) megabytes << 20;
+	} // end getStagingBudget()
+
+	/**
+	 * @param ownerName         The name of this import, under which it holds
+	 *                          its claims
+	 * @param defaultPrecedence The precedence of this import's staged prices
+	 *                          when our properties do not set one
+	 * @return This import's claims in the staging registry shared by all imports
+	 */
+	protected StagingRegistry getStagingRegistry(String ownerName, int defaultPrecedence)
+			throws MduException {
+		if (this.stagingRegistry == null) {
+			this.stagingRegistry = new StagingRegistry(ownerName,
+				getIntProperty(STAGING_PRECEDENCE_KEY, defaultPrecedence));
+		}
+
+		return this.stagingRegistry;
+	} // end getStagingRegistry(String, int)
+
+	/**
+	 * Report the price changes not staged because other imports had claimed
+	 * their securities and dates.
+	 *
+	 * @param staging The staged prices of this import
+	 */
+	protected void reportDeferred(PriceStaging staging) {
+		int toHigher = staging.getDeferredCount(StagingClaim.HELD_AT_HIGHER_PRECEDENCE);
+		int toEqual = staging.getDeferredCount(StagingClaim.HELD_AT_EQUAL_PRECEDENCE);
+
+		if (toHigher > 0) {
+			this.impWin.addText("Deferred %d price change%s to an import of higher precedence"
+				.formatted(toHigher, toHigher == 1 ? "" : "s"));
+		}
+
+		if (toEqual > 0) {
+			this.impWin.addText(("Deferred %d price change%s to an import of equal precedence"
+				+ " that staged %s first").formatted(toEqual, toEqual == 1 ? "" : "s",
+				toEqual == 1 ? "it" : "them"));
+		}
+
+	} // end reportDeferred(PriceStaging)
+
+	/**
+	 * @param key          The property key
+	 * @param defaultValue The value to use when the property is absent
+	 * @return The integer value of the property
+	 */
+	private int getIntProperty(String key, int defaultValue) throws MduException {
+		String value = getCsvProps().getProperty(key);
+		try {
+
+			return value == null ? defaultValue : Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new MduException(e, "Invalid %s value [%s] in %s",
+				key, value, this.propertiesFileName);
+		}
+	} // end getIntProperty(String, int)
 
 	/**
 	 * @return Our properties
@@ -0,0 +1,147 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Channel that reads ahead of its consumer. A virtual thread reads blocks from
+ * the source channel into a bounded queue, so waiting for input overlaps with
+ * tokenizing the input already read, while at most depth blocks are held.
+ */
+final class CsvReadAhead implements ReadableByteChannel {
+	private final ReadableByteChannel source;
+	private final BlockingQueue<ByteBuffer> blocks;
+	private final Thread reader;
+	private volatile IOException failure = null;
+	private ByteBuffer current = END;
+	private boolean eof = false;
+	private boolean open = true;
+
+	private static final int BLOCK_SIZE = 64 << 10;
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param source The channel to read until it reports end of input; closed
+	 *               when this channel is closed
+	 * @param depth  The maximum number of blocks to read ahead
+	 * @param name   The name of the input, for diagnostics
+	 */
+	CsvReadAhead(ReadableByteChannel source, int depth, String name) {
+		this.source = source;
+		this.blocks = new ArrayBlockingQueue<>(depth);
+		this.reader = Thread.ofVirtual().name("read ahead " + name).start(this::readBlocks);
+
+	} // end (ReadableByteChannel, int, String) constructor
+
+	/**
+	 * Read blocks from the source until end of input, a failure or closing.
+	 * Each block holds whatever one read returned, so slowly produced input is
+	 * passed on as soon as it arrives.
+	 */
+	private void readBlocks() {
+		try {
+			while (true) {
+				ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+				int numRead;
+
+				do {
+					numRead = this.source.read(block);
+				} while (numRead == 0);
+
+				if (numRead < 0) {
+					this.blocks.put(END);
+
+					return;
+				}
+				this.blocks.put(block.flip());
+			} // end while
+		} catch (IOException e) {
+			this.failure = e;
+			try {
+				this.blocks.put(END);
+			} catch (InterruptedException ie) { /* closed */ }
+		} catch (InterruptedException e) { /* closed */ }
+
+	} // end readBlocks()
+
+	/**
+	 * @param dst The buffer to read into
+	 * @return The number of bytes read, or -1 at end of input
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		if (!this.open)
+			throw new ClosedChannelException();
+
+		if (!this.current.hasRemaining()) {
+			if (this.eof)
+				return -1;
+
+			try {
+				this.current = this.blocks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+
+				throw new ClosedByInterruptException();
+			}
+			if (this.current == END) {
+				this.eof = true;
+
+				if (this.failure != null)
+					throw this.failure;
+
+				return -1;
+			}
+		}
+		int numRead = Math.min(dst.remaining(), this.current.remaining());
+		dst.put(this.current.slice(this.current.position(), numRead));
+		this.current.position(this.current.position() + numRead);
+
+		return numRead;
+	} // end read(ByteBuffer)
+
+	/**
+	 * @return True until this channel is closed
+	 */
+	public boolean isOpen() {
+
+		return this.open;
+	} // end isOpen()
+
+	/**
+	 * Stop reading ahead, wait for the reader to finish, then close the source
+	 * channel. Waiting ensures the source's underlying stream, such as an
+	 * archive positioned at one of its entries, is no longer in use when the
+	 * caller moves on.
+	 */
+	public void close() throws IOException {
+		this.open = false;
+		this.reader.interrupt();
+		boolean interrupted = false;
+
+		while (this.reader.isAlive()) {
+			try {
+				this.reader.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		} // end while
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		this.source.close();
+
+	} // end close()
+
+} // end class CsvReadAhead
@@ -0,0 +1,22 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+/**
+ * Receives the typed records produced by an import pipeline, one at a time,
+ * in input order, on the thread that runs the pipeline.
+ *
+ * @param <T> The typed record received
+ */
+@FunctionalInterface
+public interface CsvRecordSink<T> {
+
+	/**
+	 * @param rec The record to accept
+	 */
+	void accept(T rec) throws MduException;
+
+} // end interface CsvRecordSink
@@ -0,0 +1,167 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * Immutable view of the projected columns of one record of comma separated
+ * value input. Each column, indexed by its ordinal, stays as byte offsets into
+ * a buffer until it is retrieved.
+ */
+public final class CsvRow {
+	private final ByteBuffer buf;
+	private final int[] starts;
+	private final int[] ends;
+	private final boolean[] escaped;
+	private final int fieldCount;
+	private final long rowNumber;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param buf        The buffer holding the columns, read by absolute offsets only
+	 * @param starts     Offset of the first byte of each column, or ABSENT
+	 * @param ends       Offset just past the last byte of each column
+	 * @param escaped    True for each column containing doubled quotes
+	 * @param fieldCount The number of fields in the record
+	 * @param rowNumber  One based number of this record in the input
+	 */
+	CsvRow(ByteBuffer buf, int[] starts, int[] ends, boolean[] escaped, int fieldCount,
+			long rowNumber) {
+		this.buf = buf;
+		this.starts = starts;
+		this.ends = ends;
+		this.escaped = escaped;
+		this.fieldCount = fieldCount;
+		this.rowNumber = rowNumber;
+
+	} // end (ByteBuffer, int[], int[], boolean[], int, long) constructor
+
+	/**
+	 * @param column The column to retrieve
+	 * @return Value from this row with surrounding white space removed, or an
+	 * empty string when the column is absent from this row
+	 */
+	public String get(CsvColumn column) {
+		int slot = column.ordinal();
+
+		if (this.starts[slot] == CsvColumnPlan.ABSENT)
+			return "";
+
+		byte[] scratch = new byte[this.ends[slot] - this.starts[slot]];
+
+		return CsvTokenizer.decode(this.buf, this.starts[slot], this.ends[slot],
+			this.escaped[slot], scratch).trim();
+	} // end get(CsvColumn)
+
+	/**
+	 * @param column    The column to retrieve
+	 * @param converter Converts the trimmed value, throwing a runtime exception
+	 *                  when the value is malformed
+	 * @param <T>       The converted type
+	 * @return The converted value from this row
+	 */
+	public <T> T get(CsvColumn column, Function<String, T> converter) throws CsvFieldException {
+		String value = get(column);
+		try {
+
+			return converter.apply(value);
+		} catch (RuntimeException e) {
+			throw new CsvFieldException(e, column, value, this.rowNumber);
+		}
+	} // end get(CsvColumn, Function<String, T>)
+
+	/**
+	 * Convert a decimal value without building a string for it.
+	 *
+	 * @param column The column to retrieve
+	 * @param scale  The number of decimal places to keep
+	 * @return The value scaled by 10^scale, FixedPoint.BLANK when the column is
+	 * absent or empty, or FixedPoint.INVALID
+	 */
+	public long getScaled(CsvColumn column, int scale) {
+		int slot = column.ordinal();
+
+		if (this.starts[slot] == CsvColumnPlan.ABSENT)
+			return FixedPoint.BLANK;
+
+		if (this.escaped[slot])
+			return FixedPoint.INVALID; // numbers hold no quotes
+
+		return FixedPoint.parse(this.buf, this.starts[slot], this.ends[slot], scale);
+	} // end getScaled(CsvColumn, int)
+
+	/**
+	 * @param column The column to retrieve
+	 * @param scale  The number of decimal places to keep
+	 * @return The value scaled by 10^scale
+	 */
+	public long requireScaled(CsvColumn column, int scale) throws CsvFieldException {
+		long scaled = getScaled(column, scale);
+
+		if (!FixedPoint.isNumber(scaled))
+			throw new CsvFieldException(new NumberFormatException("Not a decimal number"),
+				column, get(column), this.rowNumber);
+
+		return scaled;
+	} // end requireScaled(CsvColumn, int)
+
+	/**
+	 * @param column The column to compare
+	 * @param raw    Undecoded field bytes
+	 * @return True when the column holds exactly these bytes
+	 */
+	boolean rawEquals(CsvColumn column, byte[] raw) {
+		int slot = column.ordinal();
+		int start = this.starts[slot];
+
+		if (start == CsvColumnPlan.ABSENT)
+			return raw.length == 0;
+
+		if (this.ends[slot] - start != raw.length)
+			return false;
+
+		for (int i = 0; i < raw.length; ++i) {
+			if (this.buf.get(start + i) != raw[i])
+				return false;
+		}
+
+		return true;
+	} // end rawEquals(CsvColumn, byte[])
+
+	/**
+	 * @param column The column to copy
+	 * @return The undecoded field bytes, empty when the column is absent
+	 */
+	byte[] getRaw(CsvColumn column) {
+		int slot = column.ordinal();
+
+		if (this.starts[slot] == CsvColumnPlan.ABSENT)
+			return new byte[0];
+
+		byte[] raw = new byte[this.ends[slot] - this.starts[slot]];
+		this.buf.get(this.starts[slot], raw);
+
+		return raw;
+	} // end getRaw(CsvColumn)
+
+	/**
+	 * @return The number of fields in the record, projected or not
+	 */
+	public int getFieldCount() {
+
+		return this.fieldCount;
+	} // end getFieldCount()
+
+	/**
+	 * @return One based number of this record in the file
+	 */
+	public long getRowNumber() {
+
+		return this.rowNumber;
+	} // end getRowNumber()
+
+} // end class CsvRow
@@ -0,0 +1,24 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+/**
+ * Converts a row of a comma separated value file to an importer's typed record.
+ * Converters may be called from several threads at once, so they must not
+ * modify shared state.
+ *
+ * @param <R> The typed record produced
+ */
+@FunctionalInterface
+public interface CsvRowConverter<R> {
+
+	/**
+	 * @param row The row to convert
+	 * @return The corresponding typed record
+	 */
+	R convert(CsvRow row) throws MduException;
+
+} // end interface CsvRowConverter
@@ -0,0 +1,688 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Byte level RFC 4180 tokenizer for comma separated value input. Regular
+ * files are memory mapped; other input is read from a channel into a buffer
+ * that is refilled until the channel reports end of input. Fields are
+ * recorded as offsets and only decoded to strings when requested.
+ */
+public class CsvTokenizer implements AutoCloseable {
+	private final String name;
+	private ReadableByteChannel channel;
+	private final boolean mapped;
+	private final int end;
+	private ByteBuffer buf;
+	private int limit;
+	private boolean eof;
+	private int pos = 0;
+	private int recordStart = 0;
+	private long recordNumber = 0;
+
+	private CsvColumnPlan plan = null;
+	private boolean[] projected = null;
+	private CsvEndRule endRule = null;
+	private boolean wordScan = false;
+	private boolean ended = false;
+	private int fieldCount = 0;
+	private boolean blank = false;
+	private int[] fieldStart = new int[INITIAL_FIELDS];
+	private int[] fieldEnd = new int[INITIAL_FIELDS];
+	private boolean[] fieldEscaped = new boolean[INITIAL_FIELDS];
+	private String[] decoded = new String[INITIAL_FIELDS];
+	private byte[] scratch = new byte[128];
+
+	private static final int INITIAL_FIELDS = 16;
+	private static final int STREAM_BUFFER_SIZE = 64 << 10;
+	private static final byte COMMA = ',';
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	/**
+	 * Construct a tokenizer over a mapped file.
+	 *
+	 * @param name    The name of the input, for diagnostics
+	 * @param channel The open channel for the file
+	 * @param buf     The mapped contents of the file
+	 */
+	private CsvTokenizer(String name, FileChannel channel, ByteBuffer buf) throws IOException {
+		this.name = name;
+		this.channel = channel;
+		this.mapped = true;
+		this.buf = buf;
+		this.limit = buf.limit();
+		this.end = Integer.MAX_VALUE;
+		this.eof = true;
+		this.pos = skipByteOrderMark();
+
+	} // end (String, FileChannel, ByteBuffer) constructor
+
+	/**
+	 * Construct a tokenizer reading from a channel until it reports end of input.
+	 *
+	 * @param name    The name of the input, for diagnostics
+	 * @param channel The channel to read
+	 */
+	private CsvTokenizer(String name, ReadableByteChannel channel) throws IOException {
+		this.name = name;
+		this.channel = channel;
+		this.mapped = false;
+		this.buf = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+		this.limit = 0;
+		this.end = Integer.MAX_VALUE;
+		this.eof = false;
+
+		while (this.limit < 3 && fill()) {
+			// read enough to check for a byte order mark
+		}
+		this.pos = skipByteOrderMark();
+
+	} // end (String, ReadableByteChannel) constructor
+
+	/**
+	 * Construct a tokenizer for the records starting within a range of another
+	 * tokenizer's mapped buffer.
+	 *
+	 * @param parent      The tokenizer whose buffer to share
+	 * @param start       Offset of the first record in the range
+	 * @param end         Offset at which no further records start
+	 * @param firstNumber One based record number of the first record in the range
+	 */
+	private CsvTokenizer(CsvTokenizer parent, int start, int end, long firstNumber) {
+		this.name = parent.name;
+		this.channel = null;
+		this.mapped = true;
+		this.buf = parent.buf;
+		this.limit = parent.limit;
+		this.end = end;
+		this.eof = true;
+		this.pos = start;
+		this.recordStart = start;
+		this.recordNumber = firstNumber - 1;
+		this.plan = parent.plan;
+		this.projected = parent.projected;
+		this.endRule = parent.endRule;
+		this.wordScan = parent.wordScan;
+		// as wide as the parent's, which cover every projected field
+		int numFields = parent.fieldStart.length;
+		this.fieldStart = new int[numFields];
+		this.fieldEnd = new int[numFields];
+		this.fieldEscaped = new boolean[numFields];
+		this.decoded = new String[numFields];
+
+	} // end (CsvTokenizer, int, int, long) constructor
+
+	/**
+	 * @param file The comma separated value file to tokenize
+	 * @return A tokenizer positioned at the first record of the file; regular
+	 * files are mapped, while pipes and other special files are streamed
+	 */
+	public static CsvTokenizer open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (!Files.isRegularFile(file))
+				return new CsvTokenizer(file.toString(), channel);
+
+			long size = channel.size();
+
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("File %s is too large to map (%d bytes)".formatted(file, size));
+
+			return new CsvTokenizer(file.toString(), channel,
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+
+			throw e;
+		}
+	} // end open(Path)
+
+	/**
+	 * @param channel The channel to read until it reports end of input; closed
+	 *                when this tokenizer is closed
+	 * @param name    The name of the input, for diagnostics
+	 * @return A tokenizer positioned at the first record of the input
+	 */
+	public static CsvTokenizer open(ReadableByteChannel channel, String name) throws IOException {
+		try {
+
+			return new CsvTokenizer(name, channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+
+			throw e;
+		}
+	} // end open(ReadableByteChannel, String)
+
+	/**
+	 * @param in   The stream to read until end of input; closed when this
+	 *             tokenizer is closed
+	 * @param name The name of the input, for diagnostics
+	 * @return A tokenizer positioned at the first record of the input
+	 */
+	public static CsvTokenizer open(InputStream in, String name) throws IOException {
+
+		return open(Channels.newChannel(in), name);
+	} // end open(InputStream, String)
+
+	/**
+	 * @return The offset of the first byte following any UTF-8 byte order mark
+	 */
+	private int skipByteOrderMark() throws IOException {
+		if (this.limit >= 3 && this.buf.get(0) == (byte) 0xEF
+				&& this.buf.get(1) == (byte) 0xBB && this.buf.get(2) == (byte) 0xBF)
+			return 3;
+
+		if (this.limit >= 2 && (this.buf.get(0) == (byte) 0xFE && this.buf.get(1) == (byte) 0xFF
+				|| this.buf.get(0) == (byte) 0xFF && this.buf.get(1) == (byte) 0xFE))
+			throw new IOException("Input %s is UTF-16 encoded; only UTF-8 is supported"
+				.formatted(this.name));
+
+		return 0;
+	} // end skipByteOrderMark()
+
+	/**
+	 * Read more input into our buffer, first discarding the bytes preceding the
+	 * next record to tokenize, or enlarging the buffer when it is already full.
+	 *
+	 * @return False when no more input is available
+	 */
+	private boolean fill() throws IOException {
+		if (this.eof)
+			return false;
+
+		if (this.pos > 0) {
+			this.buf.put(0, this.buf, this.pos, this.limit - this.pos);
+			this.limit -= this.pos;
+			this.recordStart -= this.pos;
+			this.pos = 0;
+		} else if (this.limit == this.buf.capacity()) {
+			this.buf = ByteBuffer.allocate(this.buf.capacity() * 2)
+				.put(0, this.buf, 0, this.limit);
+		}
+		int numRead;
+
+		do {
+			numRead = this.channel.read(this.buf.limit(this.buf.capacity()).position(this.limit));
+		} while (numRead == 0);
+
+		if (numRead < 0) {
+			this.eof = true;
+		} else {
+			this.limit += numRead;
+		}
+
+		return true;
+	} // end fill()
+
+	/**
+	 * Advance to the next record in the input.
+	 *
+	 * @return True when a record was found, false at end of input or of the data
+	 */
+	public boolean next() throws IOException {
+		if (this.ended)
+			return false;
+
+		while (this.pos >= this.limit && fill()) {
+			// wait for more input or end of input
+		}
+		if (this.pos >= this.limit || this.pos >= this.end)
+			return false;
+
+		this.recordStart = this.pos;
+		++this.recordNumber;
+		int p;
+
+		while ((p = scanRecord(this.pos)) < 0) {
+			// the record continues past the bytes read so far
+			fill();
+		}
+		this.pos = p;
+
+		if (this.endRule != null && this.endRule.matches(this)) {
+			// stop without reading the trailing text
+			this.ended = true;
+
+			return false;
+		}
+
+		return true;
+	} // end next()
+
+	/**
+	 * Locate the fields of the record starting at the specified offset.
+	 *
+	 * @param from Offset of the first byte of the record
+	 * @return Offset of the following record, or -1 when more input is needed
+	 */
+	private int scanRecord(int from) {
+		this.fieldCount = 0;
+		int p = from;
+		boolean moreFields = true;
+
+		while (moreFields) {
+			int start, end;
+			boolean escaped = false;
+
+			if (p < this.limit && this.buf.get(p) == QUOTE) {
+				start = ++p;
+				end = -1;
+
+				while (end < 0) {
+					if (p >= this.limit) {
+						end = p; // unterminated quote runs to end of input
+					} else if (this.buf.get(p) != QUOTE) {
+						p = this.wordScan ? CsvByteScanner.indexOfQuote(this.buf, p, this.limit) : p + 1;
+					} else if (p + 1 < this.limit && this.buf.get(p + 1) == QUOTE) {
+						escaped = true;
+						p += 2;
+					} else {
+						end = p++;
+					}
+				} // end while
+
+				// tolerate stray characters between the closing quote and the delimiter
+				while (p < this.limit && !isDelimiter(this.buf.get(p))) {
+					++p;
+				}
+			} else {
+				start = p;
+
+				if (this.wordScan) {
+					p = CsvByteScanner.indexOfDelimiter(this.buf, p, this.limit);
+				} else {
+					while (p < this.limit && !isDelimiter(this.buf.get(p))) {
+						++p;
+					}
+				}
+				end = p;
+			}
+			addField(start, end, escaped);
+
+			if (p < this.limit && this.buf.get(p) == COMMA) {
+				++p;
+			} else {
+				moreFields = false;
+			}
+		} // end while
+		// whether or not its one field is projected
+		this.blank = this.fieldCount == 1 && p == from;
+
+		if (p >= this.limit)
+			return this.eof ? p : -1;
+
+		if (this.buf.get(p) == CR) {
+			++p;
+
+			if (p >= this.limit && !this.eof)
+				return -1; // need to see whether a line feed follows
+		}
+		if (p < this.limit && this.buf.get(p) == LF) {
+			++p;
+		}
+
+		return p;
+	} // end scanRecord(int)
+
+	/**
+	 * @param b The byte to check
+	 * @return True when the byte ends a field
+	 */
+	private static boolean isDelimiter(byte b) {
+
+		return b == COMMA || b == LF || b == CR;
+	} // end isDelimiter(byte)
+
+	/**
+	 * Count another field in the current record, recording its location only
+	 * when it is projected.
+	 *
+	 * @param start   Offset of the first byte of the field
+	 * @param end     Offset just past the last byte of the field
+	 * @param escaped True when the field contains doubled quotes
+	 */
+	private void addField(int start, int end, boolean escaped) {
+		int index = this.fieldCount++;
+
+		if (this.projected == null) {
+			if (index == this.fieldStart.length) {
+				int newLength = index * 2;
+				this.fieldStart = Arrays.copyOf(this.fieldStart, newLength);
+				this.fieldEnd = Arrays.copyOf(this.fieldEnd, newLength);
+				this.fieldEscaped = Arrays.copyOf(this.fieldEscaped, newLength);
+				this.decoded = Arrays.copyOf(this.decoded, newLength);
+			}
+		} else if (index >= this.projected.length || !this.projected[index]) {
+			return; // skip fields no column references
+		}
+		this.fieldStart[index] = start;
+		this.fieldEnd[index] = end;
+		this.fieldEscaped[index] = escaped;
+		this.decoded[index] = null;
+
+	} // end addField(int, int, boolean)
+
+	/**
+	 * Restrict subsequent records to the fields a column plan references.
+	 * Other fields are still delimited but their locations are not recorded,
+	 * and only projected fields are copied into rows.
+	 *
+	 * @param plan The column plan compiled from the header
+	 */
+	public void project(CsvColumnPlan plan) {
+		boolean[] mask = plan.getReferencedFields();
+
+		if (mask.length > this.fieldStart.length) {
+			this.fieldStart = Arrays.copyOf(this.fieldStart, mask.length);
+			this.fieldEnd = Arrays.copyOf(this.fieldEnd, mask.length);
+			this.fieldEscaped = Arrays.copyOf(this.fieldEscaped, mask.length);
+			this.decoded = Arrays.copyOf(this.decoded, mask.length);
+		}
+		this.plan = plan;
+		this.projected = mask;
+
+	} // end project(CsvColumnPlan)
+
+	/**
+	 * Stop at the first subsequent record matching a rule, leaving it and
+	 * whatever follows it unread.
+	 *
+	 * @param endRule The rule recognizing the end of the data, or null for none
+	 */
+	public void endAt(CsvEndRule endRule) {
+		this.endRule = endRule;
+
+	} // end endAt(CsvEndRule)
+
+	/**
+	 * Choose how to search for delimiters in subsequent records.
+	 *
+	 * @param wordScan True to search eight bytes at a time, false a byte at a time
+	 */
+	public void scanWords(boolean wordScan) {
+		this.wordScan = wordScan;
+
+	} // end scanWords(boolean)
+
+	/**
+	 * @return True when delimiters are searched for eight bytes at a time
+	 */
+	public boolean isWordScan() {
+
+		return this.wordScan;
+	} // end isWordScan()
+
+	/**
+	 * @return True when a record matching our end rule stopped this tokenizer
+	 */
+	public boolean isEnded() {
+
+		return this.ended;
+	} // end isEnded()
+
+	/**
+	 * @return The number of fields in the current record
+	 */
+	public int getFieldCount() {
+
+		return this.fieldCount;
+	} // end getFieldCount()
+
+	/**
+	 * @param start       Offset of the first record in the range
+	 * @param end         Offset at which no further records start
+	 * @param firstNumber One based record number of the first record in the range
+	 * @return A tokenizer sharing this buffer, limited to records starting in the range
+	 */
+	CsvTokenizer range(int start, int end, long firstNumber) {
+
+		return new CsvTokenizer(this, start, end, firstNumber);
+	} // end range(int, int, long)
+
+	/**
+	 * Have a thread read streamed input ahead of tokenizing it. Mapped input is
+	 * already in memory, so is unaffected.
+	 *
+	 * @param depth The maximum number of blocks to read ahead
+	 */
+	public void readAhead(int depth) {
+		if (!this.mapped && !(this.channel instanceof CsvReadAhead)) {
+			this.channel = new CsvReadAhead(this.channel, depth, this.name);
+		}
+
+	} // end readAhead(int)
+
+	/**
+	 * @return The name of the input, for diagnostics
+	 */
+	public String getName() {
+
+		return this.name;
+	} // end getName()
+
+	/**
+	 * @return True when the whole input is mapped in memory
+	 */
+	public boolean isMapped() {
+
+		return this.mapped;
+	} // end isMapped()
+
+	/**
+	 * @return The mapped file contents, to be read by absolute offsets only
+	 */
+	ByteBuffer buffer() {
+
+		return this.buf;
+	} // end buffer()
+
+	/**
+	 * @return Offset of the next record to tokenize
+	 */
+	int getPosition() {
+
+		return this.pos;
+	} // end getPosition()
+
+	/**
+	 * @return Offset just past the last byte read so far
+	 */
+	int getLimit() {
+
+		return this.limit;
+	} // end getLimit()
+
+	/**
+	 * @return One based number of the current record in the file
+	 */
+	public long getRecordNumber() {
+
+		return this.recordNumber;
+	} // end getRecordNumber()
+
+	/**
+	 * @return An estimate of the number of records following the current one,
+	 * assuming they are about as long as the current record, or Long.MAX_VALUE
+	 * when the input is not mapped
+	 */
+	public long estimateRemainingRecords() {
+		if (!this.mapped)
+			return Long.MAX_VALUE;
+
+		int recordLength = Math.max(1, this.pos - this.recordStart);
+
+		return (this.limit - this.pos + recordLength - 1) / recordLength;
+	} // end estimateRemainingRecords()
+
+	/**
+	 * @return An immutable view of the projected columns of the current record;
+	 * streamed fields are copied, since our buffer is reused
+	 */
+	public CsvRow toRow() {
+		int numColumns = this.plan.getColumnCount();
+		int[] starts = new int[numColumns];
+		int[] ends = new int[numColumns];
+		boolean[] escaped = new boolean[numColumns];
+		int copyLength = 0;
+
+		for (int slot = 0; slot < numColumns; ++slot) {
+			int index = this.plan.fieldIndex(slot);
+
+			if (index == CsvColumnPlan.ABSENT || index >= this.fieldCount) {
+				starts[slot] = ends[slot] = CsvColumnPlan.ABSENT;
+			} else {
+				starts[slot] = this.fieldStart[index];
+				ends[slot] = this.fieldEnd[index];
+				escaped[slot] = this.fieldEscaped[index];
+				copyLength += ends[slot] - starts[slot];
+			}
+		} // end for
+
+		if (this.mapped)
+			return new CsvRow(this.buf, starts, ends, escaped, this.fieldCount, this.recordNumber);
+
+		ByteBuffer copy = ByteBuffer.allocate(copyLength);
+		int offset = 0;
+
+		for (int slot = 0; slot < numColumns; ++slot) {
+			if (starts[slot] != CsvColumnPlan.ABSENT) {
+				int len = ends[slot] - starts[slot];
+				copy.put(offset, this.buf, starts[slot], len);
+				starts[slot] = offset;
+				ends[slot] = offset += len;
+			}
+		} // end for
+
+		return new CsvRow(copy, starts, ends, escaped, this.fieldCount, this.recordNumber);
+	} // end toRow()
+
+	/**
+	 * @return True when the current record is an empty line
+	 */
+	public boolean isBlank() {
+
+		return this.blank;
+	} // end isBlank()
+
+	/**
+	 * @return The raw text of the current record, quotes included, without its line terminator
+	 */
+	public String getRecordText() {
+		int recordEnd = this.pos;
+
+		while (recordEnd > this.recordStart
+				&& (this.buf.get(recordEnd - 1) == LF || this.buf.get(recordEnd - 1) == CR)) {
+			--recordEnd;
+		}
+		byte[] bytes = new byte[recordEnd - this.recordStart];
+		this.buf.get(this.recordStart, bytes);
+
+		return new String(bytes, UTF_8);
+	} // end getRecordText()
+
+	/**
+	 * @param index Zero based field index
+	 * @return The decoded field with any enclosing quotes removed, or an empty
+	 * string when the current record has fewer fields or the field is not projected
+	 */
+	public String getField(int index) {
+		if (index >= this.fieldCount
+				|| this.projected != null && (index >= this.projected.length || !this.projected[index]))
+			return "";
+
+		if (this.decoded[index] == null) {
+			this.decoded[index] = decode(index);
+		}
+
+		return this.decoded[index];
+	} // end getField(int)
+
+	/**
+	 * @return All the fields of the current record, decoded
+	 */
+	public String[] getFields() {
+		String[] fields = new String[this.fieldCount];
+
+		for (int i = 0; i < fields.length; ++i) {
+			fields[i] = getField(i);
+		}
+
+		return fields;
+	} // end getFields()
+
+	/**
+	 * @param index Zero based field index
+	 * @return The field bytes decoded as UTF-8 with doubled quotes collapsed
+	 */
+	private String decode(int index) {
+		int len = this.fieldEnd[index] - this.fieldStart[index];
+
+		if (len > this.scratch.length) {
+			this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+		}
+
+		return decode(this.buf, this.fieldStart[index], this.fieldEnd[index],
+			this.fieldEscaped[index], this.scratch);
+	} // end decode(int)
+
+	/**
+	 * @param buf     The buffer holding the field
+	 * @param start   Offset of the first byte of the field
+	 * @param end     Offset just past the last byte of the field
+	 * @param escaped True when the field contains doubled quotes
+	 * @param scratch Work area at least as long as the field
+	 * @return The field bytes decoded as UTF-8 with doubled quotes collapsed
+	 */
+	static String decode(ByteBuffer buf, int start, int end, boolean escaped, byte[] scratch) {
+		int len = end - start;
+
+		if (len == 0)
+			return "";
+
+		buf.get(start, scratch, 0, len);
+
+		if (escaped) {
+			int out = 0;
+
+			for (int in = 0; in < len; ++in) {
+				byte b = scratch[in];
+				scratch[out++] = b;
+
+				if (b == QUOTE && in + 1 < len && scratch[in + 1] == QUOTE) {
+					++in;
+				}
+			} // end for
+			len = out;
+		}
+
+		return new String(scratch, 0, len, UTF_8);
+	} // end decode(ByteBuffer, int, int, boolean, byte[])
+
+	/**
+	 * Close this resource, relinquishing any underlying resources.
+	 */
+	public void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+		}
+
+	} // end close()
+
+} // end class CsvTokenizer
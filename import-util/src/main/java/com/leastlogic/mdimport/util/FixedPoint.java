@@ -0,0 +1,154 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation free conversion of decimal text to scaled long values. A value
+ * with scale s is held as the long value * 10^s. Problems are reported by
+ * result values rather than exceptions.
+ */
+public final class FixedPoint {
+	/** Result for text that is not a decimal number in range */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	/** Result for text that is empty or only white space */
+	public static final long BLANK = Long.MIN_VALUE + 1;
+
+	/** The largest supported scale */
+	public static final int MAX_SCALE = 18;
+
+	private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+
+		for (int i = 1; i <= MAX_SCALE; ++i) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Utility class; no instances.
+	 */
+	private FixedPoint() {
+	} // end () constructor
+
+	/**
+	 * Convert ASCII decimal text, with an optional sign and decimal point, to a
+	 * scaled long. Digits beyond the scale are rounded half away from zero.
+	 *
+	 * @param buf   The buffer holding the text, read by absolute offsets only
+	 * @param start Offset of the first byte of the text
+	 * @param end   Offset just past the last byte of the text
+	 * @param scale The number of decimal places to keep, 0 to MAX_SCALE
+	 * @return The scaled value, BLANK when there is no text, or INVALID
+	 */
+	public static long parse(ByteBuffer buf, int start, int end, int scale) {
+		while (start < end && isSpace(buf.get(start))) {
+			++start;
+		}
+		while (end > start && isSpace(buf.get(end - 1))) {
+			--end;
+		}
+		if (start == end)
+			return BLANK;
+
+		boolean negative = buf.get(start) == '-';
+
+		if (negative || buf.get(start) == '+') {
+			++start;
+		}
+		long value = 0;
+		int digits = 0;
+		int fractionDigits = -1; // no decimal point yet
+		boolean roundUp = false;
+
+		for (int p = start; p < end; ++p) {
+			byte b = buf.get(p);
+
+			if (b >= '0' && b <= '9') {
+				++digits;
+
+				if (fractionDigits < scale) {
+					if (value > (Long.MAX_VALUE - 1 - (b - '0')) / 10)
+						return INVALID; // overflow
+
+					value = value * 10 + (b - '0');
+
+					if (fractionDigits >= 0) {
+						++fractionDigits;
+					}
+				} else if (fractionDigits == scale) {
+					// the first dropped digit decides the rounding
+					roundUp = b >= '5';
+					++fractionDigits;
+				}
+			} else if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+
+				return INVALID;
+			}
+		} // end for
+
+		if (digits == 0)
+			return INVALID;
+
+		long multiplier = POWERS_OF_TEN[scale - Math.max(0, Math.min(fractionDigits, scale))];
+
+		if (value > (Long.MAX_VALUE - 1) / multiplier)
+			return INVALID; // overflow
+
+		value *= multiplier;
+
+		if (roundUp && ++value == Long.MAX_VALUE)
+			return INVALID; // overflow
+
+		return negative ? -value : value;
+	} // end parse(ByteBuffer, int, int, int)
+
+	/**
+	 * @param b The byte to check
+	 * @return True for an ASCII space or tab
+	 */
+	private static boolean isSpace(byte b) {
+
+		return b == ' ' || b == '\t';
+	} // end isSpace(byte)
+
+	/**
+	 * @param scaled A result of parsing
+	 * @return True when the result is a number rather than BLANK or INVALID
+	 */
+	public static boolean isNumber(long scaled) {
+
+		return scaled > BLANK;
+	} // end isNumber(long)
+
+	/**
+	 * @param scaled A scaled value
+	 * @param scale  The scale of the value
+	 * @return The closest double to the value
+	 */
+	public static double toDouble(long scaled, int scale) {
+
+		return (double) scaled / POWERS_OF_TEN[scale];
+	} // end toDouble(long, int)
+
+	/**
+	 * @param scaled A scaled value
+	 * @param scale  The scale of the value
+	 * @return The value as a big decimal for display or comparison, without
+	 * trailing fractional zeros, so formats see only its significant places
+	 */
+	public static BigDecimal toBigDecimal(long scaled, int scale) {
+		BigDecimal value = BigDecimal.valueOf(scaled, scale).stripTrailingZeros();
+
+		return value.scale() < 0 ? value.setScale(0) : value;
+	} // end toBigDecimal(long, int)
+
+} // end class FixedPoint
@@ -0,0 +1,286 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Works through records grouped by key on fork-join workers. Groups with
+ * different keys are worked on concurrently; the records of one group are
+ * worked on one at a time, in input order, each seeing the value staged so
+ * far for its key. Lines logged for each record are held and replayed in
+ * input order once all the work is done, so output does not depend on how
+ * the work was scheduled.
+ * <p>
+ * The work and key lookups run on fork-join workers, while the calling
+ * thread waits. Moneydance model objects are not safe to read there: read
+ * what the work needs from securities and their snapshots on the calling
+ * thread, into the records, and use model objects only as keys.
+ */
+public final class KeyedStage {
+
+	/** Stages of at least this many records are worked on in parallel */
+	public static final int PARALLEL_THRESHOLD = 256;
+
+	/**
+	 * Utility class; no instances.
+	 */
+	private KeyedStage() {
+	} // end () constructor
+
+	/**
+	 * @param recs  The records, in input order
+	 * @param keyOf Finds the key of a record, or null to skip the record; may be
+	 *              called from several threads at once
+	 * @param work  Works out the value to stage for each record
+	 * @param log   Receives the lines logged for the records, in input order
+	 * @param <R>   The typed record worked on
+	 * @param <K>   The key records are grouped by
+	 * @param <V>   The value staged for each key
+	 * @return The values staged, ordered by the record that first staged each key
+	 */
+	public static <R, K, V> Map<K, V> run(List<R> recs, Function<R, K> keyOf,
+			KeyedStageWork<R, K, V> work, Consumer<String> log) throws MduException {
+		int count = recs.size();
+		int batches = batchesFor(count);
+		List<K> keys = resolveKeys(recs, keyOf, batches);
+		List<List<Integer>> groupList = groupByKey(keys);
+		Map<K, V> staging = new ConcurrentHashMap<>();
+		Map<K, Integer> stagedAt = new ConcurrentHashMap<>();
+		List<List<String>> logs = new ArrayList<>(Collections.nCopies(count, List.of()));
+
+		forEachGroup(groupList.size(), batches, g -> {
+			for (int i : groupList.get(g)) {
+				stageRecord(recs.get(i), keys.get(i), i, work, staging, stagedAt, logs);
+			}
+		});
+
+		// replay the lines logged, then order the values staged
+		Map<K, V> staged = new LinkedHashMap<>();
+
+		for (int i = 0; i < count; ++i) {
+			logs.get(i).forEach(log);
+			K key = keys.get(i);
+
+			if (key != null && Integer.valueOf(i).equals(stagedAt.get(key))) {
+				staged.put(key, staging.get(key));
+			}
+		} // end for
+
+		return staged;
+	} // end run(List<R>, Function<R, K>, KeyedStageWork<R, K, V>, Consumer<String>)
+
+	/**
+	 * Work on all the records of each key at once, rather than one at a time.
+	 *
+	 * @param recs  The records, in input order
+	 * @param keyOf Finds the key of a record, or null to skip the record; may be
+	 *              called from several threads at once
+	 * @param work  Works out the value to stage for the records of each key
+	 * @param log   Receives the lines logged for each key, ordered by the first
+	 *              record of each key
+	 * @param <R>   The typed record worked on
+	 * @param <K>   The key records are grouped by
+	 * @param <V>   The value staged for each key
+	 * @return The values staged, ordered by the first record of each key
+	 */
+	public static <R, K, V> Map<K, V> runGroups(List<R> recs, Function<R, K> keyOf,
+			KeyedGroupWork<R, K, V> work, Consumer<String> log) throws MduException {
+		int batches = batchesFor(recs.size());
+		List<K> keys = resolveKeys(recs, keyOf, batches);
+		List<List<Integer>> groupList = groupByKey(keys);
+		int groupCount = groupList.size();
+		List<V> values = new ArrayList<>(Collections.nCopies(groupCount, null));
+		List<List<String>> logs = new ArrayList<>(Collections.nCopies(groupCount, List.of()));
+		forEachGroup(groupCount, batches, g -> {
+			List<Integer> group = groupList.get(g);
+			List<String> lines = new ArrayList<>();
+			values.set(g, work.stage(group.stream().map(recs::get).toList(),
+				keys.get(group.getFirst()), lines::add));
+
+			if (!lines.isEmpty()) {
+				logs.set(g, lines);
+			}
+		});
+
+		// replay the lines logged, then order the values staged
+		Map<K, V> staged = new LinkedHashMap<>();
+
+		for (int g = 0; g < groupCount; ++g) {
+			logs.get(g).forEach(log);
+
+			if (values.get(g) != null) {
+				staged.put(keys.get(groupList.get(g).getFirst()), values.get(g));
+			}
+		} // end for
+
+		return staged;
+	} // end runGroups(List<R>, Function<R, K>, KeyedGroupWork<R, K, V>, Consumer<String>)
+
+	/**
+	 * @param count The number of records
+	 * @return The number of tasks to divide the work for the records among
+	 */
+	private static int batchesFor(int count) {
+
+		return count >= PARALLEL_THRESHOLD
+			? Math.max(1, ForkJoinPool.getCommonPoolParallelism()) * 4 : 1;
+	} // end batchesFor(int)
+
+	/**
+	 * @param recs    The records, in input order
+	 * @param keyOf   Finds the key of a record, or null
+	 * @param batches The number of tasks to divide the records among
+	 * @return The key of each record, in input order
+	 */
+	private static <R, K> List<K> resolveKeys(List<R> recs, Function<R, K> keyOf,
+			int batches) throws MduException {
+		int count = recs.size();
+		List<K> keys = new ArrayList<>(count);
+		List<Callable<List<K>>> keyTasks = new ArrayList<>(batches);
+
+		for (int b = 0; b < batches; ++b) {
+			List<R> batch = recs.subList(count * b / batches, count * (b + 1) / batches);
+			keyTasks.add(() -> batch.stream().map(keyOf).toList());
+		}
+		invokeAll(keyTasks, batches).forEach(keys::addAll);
+
+		return keys;
+	} // end resolveKeys(List<R>, Function<R, K>, int)
+
+	/**
+	 * @param keys The key of each record, in input order
+	 * @return The indexes of the records with each key other than null, in input
+	 * order, ordered by the first record of each key
+	 */
+	private static <K> List<List<Integer>> groupByKey(List<K> keys) {
+		Map<K, List<Integer>> groups = new LinkedHashMap<>();
+
+		for (int i = 0; i < keys.size(); ++i) {
+			K key = keys.get(i);
+
+			if (key != null) {
+				groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+			}
+		} // end for
+
+		return new ArrayList<>(groups.values());
+	} // end groupByKey(List<K>)
+
+	/**
+	 * Work on the groups, dealt out in turn among the tasks.
+	 *
+	 * @param groupCount The number of groups
+	 * @param batches    The number of tasks to divide the groups among
+	 * @param groupWork  The work for one group
+	 */
+	private static void forEachGroup(int groupCount, int batches,
+			GroupTask groupWork) throws MduException {
+		List<Callable<Void>> workTasks = new ArrayList<>(batches);
+
+		for (int b = 0; b < batches; ++b) {
+			int first = b;
+			workTasks.add(() -> {
+				for (int g = first; g < groupCount; g += batches) {
+					groupWork.work(g);
+				}
+
+				return null;
+			});
+		}
+		invokeAll(workTasks, batches);
+
+	} // end forEachGroup(int, int, GroupTask)
+
+	/**
+	 * The work for one group of records.
+	 */
+	@FunctionalInterface
+	private interface GroupTask {
+
+		/**
+		 * @param group The index of the group
+		 */
+		void work(int group) throws MduException;
+
+	} // end interface GroupTask
+
+	/**
+	 * Work on one record, staging its value and holding its logged lines.
+	 *
+	 * @param rec      The record to work on
+	 * @param key      The key of the record
+	 * @param index    The index of the record in the input
+	 * @param work     Works out the value to stage
+	 * @param staging  The values staged so far, by key
+	 * @param stagedAt The index of the record that first staged each key
+	 * @param logs     The lines logged, by record index
+	 */
+	private static <R, K, V> void stageRecord(R rec, K key, int index,
+			KeyedStageWork<R, K, V> work, Map<K, V> staging, Map<K, Integer> stagedAt,
+			List<List<String>> logs) throws MduException {
+		List<String> lines = new ArrayList<>();
+		V value = work.stage(rec, key, staging.get(key), lines::add);
+
+		if (value != null) {
+			staging.put(key, value);
+			stagedAt.putIfAbsent(key, index);
+		}
+		if (!lines.isEmpty()) {
+			logs.set(index, lines);
+		}
+
+	} // end stageRecord(R, K, int, KeyedStageWork<R, K, V>, Map<K, V>, Map<K, Integer>, List<List<String>>)
+
+	/**
+	 * @param tasks   The tasks to run
+	 * @param batches The number of tasks; a single task runs on the caller's thread
+	 * @param <T>     The result type of each task
+	 * @return The task results, in task order
+	 */
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks, int batches) throws MduException {
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			if (batches == 1) {
+				results.add(tasks.getFirst().call());
+			} else {
+				for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+					results.add(future.get());
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MduException mduException)
+				throw mduException;
+
+			if (e.getCause() instanceof RuntimeException runtimeException)
+				throw runtimeException;
+
+			throw new MduException(e.getCause(), "Exception staging in parallel: %s", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new MduException(e, "Interrupted staging in parallel");
+		} catch (MduException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MduException(e, "Exception staging: %s", e);
+		}
+
+		return results;
+	} // end invokeAll(List<Callable<T>>, int)
+
+} // end class KeyedStage
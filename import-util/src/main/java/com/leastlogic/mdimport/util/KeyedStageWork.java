@@ -0,0 +1,32 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MduException;
+
+import java.util.function.Consumer;
+
+/**
+ * Works out the value to stage for one record of a keyed stage. Work for
+ * different keys may run on several threads at once, so it must not modify
+ * shared state other than through its result and log, nor read Moneydance
+ * model objects.
+ *
+ * @param <R> The typed record worked on
+ * @param <K> The key records are grouped by
+ * @param <V> The value staged for each key
+ */
+@FunctionalInterface
+public interface KeyedStageWork<R, K, V> {
+
+	/**
+	 * @param rec    The record to work on
+	 * @param key    The key of the record
+	 * @param staged The value staged for the key by earlier records, or null
+	 * @param log    Receives lines to show for the record
+	 * @return The value to stage for the key, or null to stage nothing
+	 */
+	V stage(R rec, K key, V staged, Consumer<String> log) throws MduException;
+
+} // end interface KeyedStageWork
@@ -0,0 +1,144 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.leastlogic.moneydance.util.MdUtil;
+import com.leastlogic.moneydance.util.MduException;
+
+import java.math.BigDecimal;
+import java.time.temporal.ChronoUnit;
+import java.util.Properties;
+
+/**
+ * Immutable policy deciding which price changes are worth a snapshot write.
+ * By default any price differing from the snapshot on its date is staged,
+ * as is any price on a date without a snapshot. Each importer may configure
+ * tolerances below which differences are ignored, a minimum age of the
+ * security's latest snapshot before a newer date is staged, and staging only
+ * the latest date of each security.
+ */
+public final class PriceChangePolicy {
+	private final BigDecimal absTolerance;
+	private final BigDecimal relTolerance;
+	private final int minAgeDays;
+	private final boolean latestOnly;
+
+	/** Property key; price differences up to this amount are ignored */
+	public static final String ABS_TOLERANCE_KEY = "change.tolerance.abs";
+
+	/** Property key; price differences up to this fraction of the old price are ignored */
+	public static final String REL_TOLERANCE_KEY = "change.tolerance.rel";
+
+	/** Property key; days a security's latest snapshot must reach before a newer date is staged */
+	public static final String MIN_AGE_KEY = "change.min.age.days";
+
+	/** Property key; true to stage only the latest date of each security */
+	public static final String LATEST_ONLY_KEY = "change.latest.only";
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param absTolerance Absolute tolerance, zero for none
+	 * @param relTolerance Relative tolerance, zero for none
+	 * @param minAgeDays   Minimum age in days, zero for none
+	 * @param latestOnly   True to stage only the latest date of each security
+	 */
+	private PriceChangePolicy(BigDecimal absTolerance, BigDecimal relTolerance, int minAgeDays,
+							  boolean latestOnly) {
+		this.absTolerance = absTolerance;
+		this.relTolerance = relTolerance;
+		this.minAgeDays = minAgeDays;
+		this.latestOnly = latestOnly;
+
+	} // end (BigDecimal, BigDecimal, int, boolean) constructor
+
+	/**
+	 * @param csvProps           Properties possibly holding change policy settings
+	 * @param propertiesFileName The name of the properties file, for diagnostics
+	 * @return The configured policy
+	 */
+	public static PriceChangePolicy compile(Properties csvProps, String propertiesFileName)
+			throws MduException {
+		BigDecimal absTolerance = getTolerance(csvProps, ABS_TOLERANCE_KEY, propertiesFileName);
+		BigDecimal relTolerance = getTolerance(csvProps, REL_TOLERANCE_KEY, propertiesFileName);
+		String minAge = csvProps.getProperty(MIN_AGE_KEY, "0").trim();
+		int minAgeDays;
+		try {
+			minAgeDays = Integer.parseInt(minAge);
+		} catch (NumberFormatException e) {
+			minAgeDays = -1;
+		}
+		if (minAgeDays < 0)
+			throw new MduException(null, "Invalid %s value [%s] in %s",
+				MIN_AGE_KEY, minAge, propertiesFileName);
+
+		return new PriceChangePolicy(absTolerance, relTolerance, minAgeDays,
+			Boolean.parseBoolean(csvProps.getProperty(LATEST_ONLY_KEY)));
+	} // end compile(Properties, String)
+
+	/**
+	 * @param csvProps           Properties possibly holding the tolerance
+	 * @param key                The property key of the tolerance
+	 * @param propertiesFileName The name of the properties file, for diagnostics
+	 * @return The tolerance, zero when absent
+	 */
+	private static BigDecimal getTolerance(Properties csvProps, String key,
+										   String propertiesFileName) throws MduException {
+		String tolerance = csvProps.getProperty(key, "0").trim();
+		try {
+			BigDecimal value = new BigDecimal(tolerance);
+
+			if (value.signum() >= 0)
+				return value;
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+
+		throw new MduException(null, "Invalid %s value [%s] in %s",
+			key, tolerance, propertiesFileName);
+	} // end getTolerance(Properties, String, String)
+
+	/**
+	 * @return True to stage only the latest date of each security
+	 */
+	public boolean isLatestOnly() {
+
+		return this.latestOnly;
+	} // end isLatestOnly()
+
+	/**
+	 * @param lastDateInt Date integer of the security's latest snapshot on or
+	 *                    before the price's date, or 0 when there is none
+	 * @param oldPrice    The price of that snapshot
+	 * @param dateInt     Date integer of the price
+	 * @param price       The price
+	 * @return True when the price is worth staging
+	 */
+	public boolean accepts(int lastDateInt, BigDecimal oldPrice, int dateInt, BigDecimal price) {
+		if (lastDateInt == 0)
+			return true;
+
+		if (lastDateInt != dateInt && this.minAgeDays > 0
+				&& ChronoUnit.DAYS.between(MdUtil.convDateIntToLocal(lastDateInt),
+					MdUtil.convDateIntToLocal(dateInt)) < this.minAgeDays)
+			return false;
+
+		if (lastDateInt != dateInt && !hasTolerance())
+			return true; // a new date, whatever its price
+
+		BigDecimal difference = price.subtract(oldPrice).abs();
+
+		return difference.compareTo(this.absTolerance) > 0
+			&& difference.compareTo(oldPrice.abs().multiply(this.relTolerance)) > 0;
+	} // end accepts(int, BigDecimal, int, BigDecimal)
+
+	/**
+	 * @return True when either tolerance is configured
+	 */
+	private boolean hasTolerance() {
+
+		return this.absTolerance.signum() > 0 || this.relTolerance.signum() > 0;
+	} // end hasTolerance()
+
+} // end class PriceChangePolicy
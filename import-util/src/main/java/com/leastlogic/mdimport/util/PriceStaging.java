@@ -0,0 +1,668 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.leastlogic.moneydance.util.MdLog;
+import com.leastlogic.moneydance.util.MduException;
+import com.leastlogic.moneydance.util.SecurityHandler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Columnar store of the security prices staged by an import. Each staged
+ * price is a row of parallel primitive arrays: security id, date integer,
+ * price, high, low and volume. Securities are numbered in the order first
+ * staged, and rows are found by security id and date through open addressed
+ * tables, so staging many prices costs a few arrays rather than an object
+ * graph per price. Deferred update handlers are only created when the
+ * prices are applied.
+ * <p>
+ * Past an optional memory budget, the rows held are sorted by security id and
+ * date and spilled as a run to a temporary file, and the columns shrink back to
+ * their initial capacity. The runs are merged back through a small buffer each
+ * when the prices are applied or visited, the latest run winning when several
+ * hold the same security and date. The file is deleted when the prices are
+ * cleared. The budget bounds this store alone, so an importer holding many
+ * records can stage them here as they are read and visit them by security.
+ * <p>
+ * With an optional staging registry, each price staged is claimed in the
+ * registry shared by all imports, and only applied while still claimed.
+ */
+public class PriceStaging {
+	private final int scale;
+
+	// securities by id, and open addressed table of security id + 1 by security hash
+	private CurrencyType[] securities = new CurrencyType[INITIAL_CAPACITY];
+	private int[] securitySlots = new int[INITIAL_CAPACITY * 2];
+	private int securityCount = 0;
+
+	// staged price columns, and open addressed table of row + 1 by security id and date
+	private int[] securityIds = new int[INITIAL_CAPACITY];
+	private int[] dateInts = new int[INITIAL_CAPACITY];
+	private long[] prices = new long[INITIAL_CAPACITY];
+	private long[] highs = new long[INITIAL_CAPACITY];
+	private long[] lows = new long[INITIAL_CAPACITY];
+	private long[] volumes = new long[INITIAL_CAPACITY];
+	private int[] rowSlots = new int[INITIAL_CAPACITY * 2];
+	private int rowCount = 0;
+
+	// sorted runs spilled to disk
+	private long memoryBudget = Long.MAX_VALUE;
+	private Path spillFile = null;
+	private FileChannel spillChannel = null;
+	private long[] runOffsets = new long[4];
+	private int[] runLengths = new int[4];
+	private int runCount = 0;
+	private int spilledRows = 0;
+
+	private StagingRegistry registry = null;
+	private final int[] deferredCounts = new int[StagingClaim.values().length];
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Approximate heap bytes used per row held: its columns and table slots */
+	private static final int ROW_BYTES = 48;
+
+	/** Bytes per spilled row: the key, then price, high, low and volume */
+	private static final int SPILLED_ROW_BYTES = 40;
+
+	/** Head key of a run with no rows left */
+	private static final long EXHAUSTED = Long.MAX_VALUE;
+
+	/** Bytes of spilled rows written or read at a time */
+	private static final int IO_BUFFER_SIZE = SPILLED_ROW_BYTES * 1024;
+
+	/**
+	 * Reader of one spilled run, through a buffer holding whole rows.
+	 */
+	private static final class SpilledRun {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE).limit(0);
+		private long position;
+		private final long end;
+
+		/**
+		 * Sole constructor.
+		 *
+		 * @param channel The spill file
+		 * @param offset  Offset of the run's first row in the file
+		 * @param length  The number of rows in the run
+		 */
+		SpilledRun(FileChannel channel, long offset, int length) {
+			this.channel = channel;
+			this.position = offset;
+			this.end = offset + (long) length * SPILLED_ROW_BYTES;
+
+		} // end (FileChannel, long, int) constructor
+
+		/**
+		 * @return The key of the run's next row, or EXHAUSTED
+		 */
+		long headKey() throws IOException {
+			if (!this.buffer.hasRemaining()) {
+				if (this.position == this.end)
+					return EXHAUSTED;
+
+				this.buffer.clear().limit((int) Math.min(IO_BUFFER_SIZE, this.end - this.position));
+
+				while (this.buffer.hasRemaining()) {
+					if (this.channel.read(this.buffer, this.position + this.buffer.position()) < 0)
+						throw new EOFException();
+				} // end while
+				this.position += this.buffer.flip().limit();
+			}
+
+			return this.buffer.getLong(this.buffer.position());
+		} // end headKey()
+
+		/**
+		 * @return The buffer positioned at the run's next row, after headKey()
+		 */
+		ByteBuffer row() {
+
+			return this.buffer;
+		} // end row()
+
+		/**
+		 * Pass over the run's next row, after headKey().
+		 */
+		void skip() {
+			this.buffer.position(this.buffer.position() + SPILLED_ROW_BYTES);
+
+		} // end skip()
+
+	} // end class SpilledRun
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param scale The scale of the prices staged; volumes have scale zero
+	 */
+	public PriceStaging(int scale) {
+		this.scale = scale;
+
+	} // end (int) constructor
+
+	/**
+	 * @param memoryBudget Approximate heap bytes of rows to hold before spilling
+	 *                     them to disk, or Long.MAX_VALUE to never spill
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+
+	} // end setMemoryBudget(long)
+
+	/**
+	 * @param registry The registry in which to claim each price staged, or null
+	 *                 to stage prices without claims
+	 */
+	public void setRegistry(StagingRegistry registry) {
+		if (this.registry != null && this.registry != registry) {
+			this.registry.releaseAll();
+		}
+		this.registry = registry;
+
+	} // end setRegistry(StagingRegistry)
+
+	/**
+	 * Stage a price, replacing any price staged for the same security and date.
+	 *
+	 * @param security The Moneydance security
+	 * @param dateInt  The date integer of the price
+	 * @param price    The scaled price
+	 * @param high     The scaled high price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param low      The scaled low price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param volume   The volume, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @return False when not staged, as another import of equal or higher
+	 * precedence has claimed the security and date
+	 */
+	public boolean add(CurrencyType security, int dateInt, long price, long high, long low,
+					   long volume) throws MduException {
+		if (this.registry != null) {
+			StagingClaim claim = this.registry.claim(security, dateInt);
+
+			if (claim != StagingClaim.CLAIMED) {
+				++this.deferredCounts[claim.ordinal()];
+
+				return false;
+			}
+		}
+
+		int securityId = securityId(security);
+		int slot = rowSlot(securityId, dateInt);
+		int row = this.rowSlots[slot] - 1;
+
+		if (row < 0) {
+			row = this.rowCount++;
+			ensureRowCapacity();
+			this.rowSlots[slot] = row + 1;
+			this.securityIds[row] = securityId;
+			this.dateInts[row] = dateInt;
+		}
+		this.prices[row] = price;
+		this.highs[row] = high;
+		this.lows[row] = low;
+		this.volumes[row] = volume;
+
+		if (this.rowCount * 2 > this.rowSlots.length) {
+			rehashRows();
+		}
+		if ((long) this.rowCount * ROW_BYTES > this.memoryBudget) {
+			spill();
+		}
+
+		return true;
+	} // end add(CurrencyType, int, long, long, long, long)
+
+	/**
+	 * Stage a price without high, low or volume.
+	 *
+	 * @param security The Moneydance security
+	 * @param dateInt  The date integer of the price
+	 * @param price    The scaled price
+	 * @return False when not staged, as another import of equal or higher
+	 * precedence has claimed the security and date
+	 */
+	public boolean add(CurrencyType security, int dateInt, long price) throws MduException {
+
+		return add(security, dateInt, price, FixedPoint.BLANK, FixedPoint.BLANK, FixedPoint.BLANK);
+	} // end add(CurrencyType, int, long)
+
+	/**
+	 * @param claim How the import holding the claims ranked
+	 * @return The number of prices not staged since last cleared, as another
+	 * import so ranked had claimed their security and date
+	 */
+	public int getDeferredCount(StagingClaim claim) {
+
+		return this.deferredCounts[claim.ordinal()];
+	} // end getDeferredCount(StagingClaim)
+
+	/**
+	 * @return True when no prices are staged
+	 */
+	public boolean isEmpty() {
+
+		return this.rowCount + this.spilledRows == 0;
+	} // end isEmpty()
+
+	/**
+	 * Create a deferred update handler for each staged price and apply it, in
+	 * order of security id then date, so each security's latest price is
+	 * applied last. Prices claimed since by an import of higher precedence are
+	 * skipped. The cached snapshots of each security changed are then discarded.
+	 *
+	 * @param snapshots Provides the snapshot list of each security and is
+	 *                  invalidated for the securities changed
+	 * @return The number of prices applied
+	 */
+	public int applyUpdates(SnapshotCache snapshots) throws MduException {
+		int[] applied = {0};
+
+		forEach((security, dateInt, price, high, low, volume) -> {
+			if (apply(snapshots, security, dateInt, price, high, low, volume)) {
+				++applied[0];
+			}
+		});
+
+		for (int id = 0; id < this.securityCount; ++id) {
+			snapshots.invalidate(this.securities[id]);
+		}
+
+		return applied[0];
+	} // end applyUpdates(SnapshotCache)
+
+	/**
+	 * Visit each staged price, in order of security id then date, so the
+	 * prices of each security are visited together, securities in the order
+	 * first staged.
+	 *
+	 * @param visitor Receives each staged price
+	 */
+	public void forEach(StagedPriceVisitor visitor) throws MduException {
+		if (this.runCount == 0) {
+			for (long key : sortedKeys()) {
+				int row = this.rowSlots[rowSlot(securityIdOf(key), dateIntOf(key))] - 1;
+				visitor.visit(this.securities[this.securityIds[row]], this.dateInts[row],
+					this.prices[row], this.highs[row], this.lows[row], this.volumes[row]);
+			}
+		} else {
+			mergeRuns(visitor);
+		}
+
+	} // end forEach(StagedPriceVisitor)
+
+	/**
+	 * Spill the rows still held, then visit the rows of all the runs in key
+	 * order, reading each run through its own buffer.
+	 *
+	 * @param visitor Receives each staged price
+	 */
+	private void mergeRuns(StagedPriceVisitor visitor) throws MduException {
+		if (this.rowCount > 0) {
+			spill();
+		}
+		SpilledRun[] runs = new SpilledRun[this.runCount];
+		long[] heads = new long[this.runCount];
+		try {
+			for (int r = 0; r < this.runCount; ++r) {
+				runs[r] = new SpilledRun(this.spillChannel, this.runOffsets[r], this.runLengths[r]);
+				heads[r] = runs[r].headKey();
+			}
+
+			while (true) {
+				long key = EXHAUSTED;
+				int latest = -1;
+
+				// runs are few, so a scan finds the least key; later runs win ties
+				for (int r = 0; r < this.runCount; ++r) {
+					if (heads[r] <= key && heads[r] != EXHAUSTED) {
+						key = heads[r];
+						latest = r;
+					}
+				}
+				if (latest < 0)
+					break;
+
+				ByteBuffer row = runs[latest].row();
+				row.getLong(); // the key
+				visitor.visit(this.securities[securityIdOf(key)], dateIntOf(key), row.getLong(),
+					row.getLong(), row.getLong(), row.getLong());
+
+				for (int r = 0; r < this.runCount; ++r) {
+					if (heads[r] == key) {
+						if (r != latest) {
+							// superseded by a later run
+							runs[r].skip();
+						}
+						heads[r] = runs[r].headKey();
+					}
+				}
+			} // end while
+		} catch (IOException e) {
+			throw new MduException(e, "Exception reading staged prices from %s", this.spillFile);
+		}
+
+	} // end mergeRuns(StagedPriceVisitor)
+
+	/**
+	 * Create a deferred update handler for one price and apply it, when still
+	 * claimed.
+	 *
+	 * @param snapshots Provides the snapshot list of the security
+	 * @param security  The Moneydance security
+	 * @param dateInt   The date integer of the price
+	 * @param price     The scaled price
+	 * @param high      The scaled high price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param low       The scaled low price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param volume    The volume, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @return True when the price was applied
+	 */
+	private boolean apply(SnapshotCache snapshots, CurrencyType security, int dateInt, long price,
+						  long high, long low, long volume) {
+		if (this.registry == null) {
+			write(snapshots, security, dateInt, price, high, low, volume);
+
+			return true;
+		}
+
+		return this.registry.writeIfClaimed(security, dateInt,
+			() -> write(snapshots, security, dateInt, price, high, low, volume));
+	} // end apply(SnapshotCache, CurrencyType, int, long, long, long, long)
+
+	/**
+	 * Create a deferred update handler for one price and apply it.
+	 *
+	 * @param snapshots Provides the snapshot list of the security
+	 * @param security  The Moneydance security
+	 * @param dateInt   The date integer of the price
+	 * @param price     The scaled price
+	 * @param high      The scaled high price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param low       The scaled low price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param volume    The volume, FixedPoint.BLANK or FixedPoint.INVALID
+	 */
+	private void write(SnapshotCache snapshots, CurrencyType security, int dateInt, long price,
+					   long high, long low, long volume) {
+		SecurityHandler handler = new SecurityHandler(snapshots.getSnapshotList(security));
+		double newPrice = FixedPoint.toDouble(price, this.scale);
+
+		if (FixedPoint.isNumber(high) && FixedPoint.isNumber(low) && FixedPoint.isNumber(volume)) {
+			handler.storeNewPrice(newPrice, dateInt, volume,
+				FixedPoint.toDouble(high, this.scale), FixedPoint.toDouble(low, this.scale));
+		} else {
+			handler.storeNewPrice(newPrice, dateInt);
+		}
+		handler.applyUpdate();
+
+	} // end write(SnapshotCache, CurrencyType, int, long, long, long, long)
+
+	/**
+	 * Write the rows held, sorted by key, as a run at the end of the spill
+	 * file, then forget them and shrink the columns. Security ids are kept.
+	 */
+	private void spill() throws MduException {
+		long[] keys = sortedKeys();
+		try {
+			if (this.spillFile == null) {
+				this.spillFile = Files.createTempFile("price-staging", ".tmp");
+				this.spillChannel = FileChannel.open(this.spillFile, READ, WRITE);
+			}
+			long offset = this.spillChannel.size();
+			long position = offset;
+			ByteBuffer run = ByteBuffer.allocate(IO_BUFFER_SIZE);
+
+			for (long key : keys) {
+				int row = this.rowSlots[rowSlot(securityIdOf(key), dateIntOf(key))] - 1;
+				run.putLong(key).putLong(this.prices[row]).putLong(this.highs[row])
+					.putLong(this.lows[row]).putLong(this.volumes[row]);
+
+				if (!run.hasRemaining()) {
+					position = write(run, position);
+				}
+			}
+			write(run, position);
+
+			if (this.runCount == this.runOffsets.length) {
+				this.runOffsets = Arrays.copyOf(this.runOffsets, this.runCount * 2);
+				this.runLengths = Arrays.copyOf(this.runLengths, this.runCount * 2);
+			}
+			this.runOffsets[this.runCount] = offset;
+			this.runLengths[this.runCount++] = keys.length;
+		} catch (IOException e) {
+			throw new MduException(e, "Exception spilling staged prices to %s", this.spillFile);
+		}
+		this.spilledRows += this.rowCount;
+		this.rowCount = 0;
+		allocateRows();
+
+	} // end spill()
+
+	/**
+	 * Write the bytes put in a buffer to the spill file, then empty the buffer.
+	 *
+	 * @param buffer   The buffer holding whole rows
+	 * @param position Offset in the spill file at which to write
+	 * @return Offset in the spill file just past the bytes written
+	 */
+	private long write(ByteBuffer buffer, long position) throws IOException {
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			position += this.spillChannel.write(buffer, position);
+		} // end while
+		buffer.clear();
+
+		return position;
+	} // end write(ByteBuffer, long)
+
+	/**
+	 * @return The keys of the rows held, in ascending order
+	 */
+	private long[] sortedKeys() {
+		long[] keys = new long[this.rowCount];
+
+		for (int row = 0; row < this.rowCount; ++row) {
+			keys[row] = keyOf(this.securityIds[row], this.dateInts[row]);
+		}
+		Arrays.sort(keys);
+
+		return keys;
+	} // end sortedKeys()
+
+	/**
+	 * @param securityId The security id
+	 * @param dateInt    The date integer
+	 * @return The key ordering rows by security id, then date
+	 */
+	private static long keyOf(int securityId, int dateInt) {
+
+		return (long) securityId << 32 | (dateInt & 0xFFFFFFFFL);
+	} // end keyOf(int, int)
+
+	/**
+	 * @param key A row key
+	 * @return The security id of the key
+	 */
+	private static int securityIdOf(long key) {
+
+		return (int) (key >>> 32);
+	} // end securityIdOf(long)
+
+	/**
+	 * @param key A row key
+	 * @return The date integer of the key
+	 */
+	private static int dateIntOf(long key) {
+
+		return (int) key;
+	} // end dateIntOf(long)
+
+	/**
+	 * Discard all staged prices, deleting any spill file and releasing any
+	 * claims.
+	 */
+	public void clear() {
+		if (this.registry != null) {
+			this.registry.releaseAll();
+		}
+		Arrays.fill(this.securities, 0, this.securityCount, null);
+		Arrays.fill(this.securitySlots, 0);
+		this.securityCount = 0;
+		this.rowCount = 0;
+		allocateRows();
+		this.runCount = 0;
+		this.spilledRows = 0;
+		Arrays.fill(this.deferredCounts, 0);
+
+		if (this.spillFile != null) {
+			try {
+				if (this.spillChannel != null) {
+					this.spillChannel.close();
+				}
+			} catch (IOException e) {
+				MdLog.all("Problem closing %s".formatted(this.spillFile), e);
+			}
+			try {
+				Files.deleteIfExists(this.spillFile);
+			} catch (IOException e) {
+				MdLog.all("Problem deleting %s".formatted(this.spillFile), e);
+			}
+			this.spillChannel = null;
+			this.spillFile = null;
+		}
+
+	} // end clear()
+
+	/**
+	 * Replace the columns and row table with empty ones of initial capacity, so
+	 * memory used by rows spilled or cleared is released.
+	 */
+	private void allocateRows() {
+		this.securityIds = new int[INITIAL_CAPACITY];
+		this.dateInts = new int[INITIAL_CAPACITY];
+		this.prices = new long[INITIAL_CAPACITY];
+		this.highs = new long[INITIAL_CAPACITY];
+		this.lows = new long[INITIAL_CAPACITY];
+		this.volumes = new long[INITIAL_CAPACITY];
+		this.rowSlots = new int[INITIAL_CAPACITY * 2];
+
+	} // end allocateRows()
+
+	/**
+	 * @param security The Moneydance security
+	 * @return The id of the security, numbering it when new
+	 */
+	private int securityId(CurrencyType security) {
+		int mask = this.securitySlots.length - 1;
+		int slot = mix(security.hashCode()) & mask;
+		int id;
+
+		while ((id = this.securitySlots[slot] - 1) >= 0) {
+			if (this.securities[id].equals(security))
+				return id;
+
+			slot = (slot + 1) & mask;
+		} // end while
+		id = this.securityCount++;
+
+		if (id == this.securities.length) {
+			this.securities = Arrays.copyOf(this.securities, id * 2);
+		}
+		this.securities[id] = security;
+		this.securitySlots[slot] = id + 1;
+
+		if (this.securityCount * 2 > this.securitySlots.length) {
+			rehashSecurities();
+		}
+
+		return id;
+	} // end securityId(CurrencyType)
+
+	/**
+	 * @param securityId The security id
+	 * @param dateInt    The date integer
+	 * @return The slot of the row for the security and date, or the empty slot for it
+	 */
+	private int rowSlot(int securityId, int dateInt) {
+		int mask = this.rowSlots.length - 1;
+		int slot = mix(securityId * 31 + dateInt) & mask;
+		int row;
+
+		while ((row = this.rowSlots[slot] - 1) >= 0) {
+			if (this.securityIds[row] == securityId && this.dateInts[row] == dateInt)
+				return slot;
+
+			slot = (slot + 1) & mask;
+		} // end while
+
+		return slot;
+	} // end rowSlot(int, int)
+
+	/**
+	 * Double the capacity of the security table.
+	 */
+	private void rehashSecurities() {
+		this.securitySlots = new int[this.securitySlots.length * 2];
+		int mask = this.securitySlots.length - 1;
+
+		for (int id = 0; id < this.securityCount; ++id) {
+			int slot = mix(this.securities[id].hashCode()) & mask;
+
+			while (this.securitySlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.securitySlots[slot] = id + 1;
+		} // end for
+
+	} // end rehashSecurities()
+
+	/**
+	 * Double the capacity of the row table.
+	 */
+	private void rehashRows() {
+		this.rowSlots = new int[this.rowSlots.length * 2];
+
+		for (int row = 0; row < this.rowCount; ++row) {
+			this.rowSlots[rowSlot(this.securityIds[row], this.dateInts[row])] = row + 1;
+		}
+
+	} // end rehashRows()
+
+	/**
+	 * Make room in the columns for the row just counted.
+	 */
+	private void ensureRowCapacity() {
+		if (this.rowCount > this.prices.length) {
+			int capacity = this.prices.length * 2;
+			this.securityIds = Arrays.copyOf(this.securityIds, capacity);
+			this.dateInts = Arrays.copyOf(this.dateInts, capacity);
+			this.prices = Arrays.copyOf(this.prices, capacity);
+			this.highs = Arrays.copyOf(this.highs, capacity);
+			this.lows = Arrays.copyOf(this.lows, capacity);
+			this.volumes = Arrays.copyOf(this.volumes, capacity);
+		}
+
+	} // end ensureRowCapacity()
+
+	/**
+	 * @param hash A hash code
+	 * @return The hash code with its bits spread, so nearby values use distant slots
+	 */
+	private static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+
+		return h ^ (h >>> 16);
+	} // end mix(int)
+
+} // end class PriceStaging
@@ -0,0 +1,149 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencySnapshot;
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.leastlogic.moneydance.util.SnapshotList;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the price snapshots of each Moneydance security, sorted by date
+ * so the snapshot in effect on a date is found by binary search. Snapshot
+ * lists, needed to stage price updates, are built at most once per security.
+ * A security's cached snapshots are rebuilt when its snapshot count no longer
+ * matches, so a snapshot added or removed elsewhere is seen without
+ * discarding the snapshots of other securities.
+ */
+public class SnapshotCache {
+	private final Map<CurrencyType, Snapshots> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * The snapshots of one security.
+	 */
+	private static class Snapshots {
+		private final CurrencyType security;
+		private final int[] dateInts;
+		private final CurrencySnapshot[] snapshots;
+		private SnapshotList snapshotList = null;
+
+		/**
+		 * Sole constructor.
+		 *
+		 * @param security Moneydance security
+		 */
+		Snapshots(CurrencyType security) {
+			this.security = security;
+			List<CurrencySnapshot> sorted = security.getSnapshots().stream()
+				.sorted(Comparator.comparingInt(CurrencySnapshot::getDateInt)).toList();
+			this.snapshots = sorted.toArray(new CurrencySnapshot[0]);
+			this.dateInts = new int[this.snapshots.length];
+
+			for (int i = 0; i < this.snapshots.length; ++i) {
+				this.dateInts[i] = this.snapshots[i].getDateInt();
+			}
+
+		} // end (CurrencyType) constructor
+
+		/**
+		 * @return True when the security still has the snapshots cached
+		 */
+		boolean isCurrent() {
+
+			return this.snapshots.length == this.security.getSnapshotCount();
+		} // end isCurrent()
+
+		/**
+		 * @param dateInt The date integer to look up
+		 * @return The latest snapshot on or before the date, if any
+		 */
+		Optional<CurrencySnapshot> getSnapshotForDate(int dateInt) {
+			int low = 0;
+			int high = this.dateInts.length;
+
+			// find the first snapshot after the date
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (this.dateInts[mid] <= dateInt) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			} // end while
+
+			return low == 0 ? Optional.empty() : Optional.of(this.snapshots[low - 1]);
+		} // end getSnapshotForDate(int)
+
+		/**
+		 * @return The snapshot list of the security
+		 */
+		synchronized SnapshotList getSnapshotList() {
+			if (this.snapshotList == null) {
+				this.snapshotList = new SnapshotList(this.security);
+			}
+
+			return this.snapshotList;
+		} // end getSnapshotList()
+
+	} // end class Snapshots
+
+	/**
+	 * @param security Moneydance security
+	 * @return The snapshots of the security, sorted and cached until its
+	 * snapshot count changes
+	 */
+	private Snapshots get(CurrencyType security) {
+
+		return this.cache.compute(security, (sec, cached) ->
+			cached != null && cached.isCurrent() ? cached : new Snapshots(sec));
+	} // end get(CurrencyType)
+
+	/**
+	 * @param security Moneydance security
+	 * @param dateInt  The date integer to look up
+	 * @return The latest snapshot of the security on or before the date, if any
+	 */
+	public Optional<CurrencySnapshot> getSnapshotForDate(CurrencyType security, int dateInt) {
+
+		return get(security).getSnapshotForDate(dateInt);
+	} // end getSnapshotForDate(CurrencyType, int)
+
+	/**
+	 * @param security Moneydance security
+	 * @return All the snapshots of the security, in date order, for a merge
+	 * join against data sorted the same way
+	 */
+	public List<CurrencySnapshot> getSortedSnapshots(CurrencyType security) {
+
+		return Collections.unmodifiableList(Arrays.asList(get(security).snapshots));
+	} // end getSortedSnapshots(CurrencyType)
+
+	/**
+	 * @param security Moneydance security
+	 * @return A snapshot list for the security, built once
+	 */
+	public SnapshotList getSnapshotList(CurrencyType security) {
+
+		return get(security).getSnapshotList();
+	} // end getSnapshotList(CurrencyType)
+
+	/**
+	 * Forget the cached snapshots of a security, such as after its prices change.
+	 *
+	 * @param security Moneydance security
+	 */
+	public void invalidate(CurrencyType security) {
+		this.cache.remove(security);
+
+	} // end invalidate(CurrencyType)
+
+} // end class SnapshotCache
@@ -0,0 +1,27 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.leastlogic.moneydance.util.MduException;
+
+/**
+ * Receives the prices held in a price staging store, in order of security,
+ * then date.
+ */
+@FunctionalInterface
+public interface StagedPriceVisitor {
+
+	/**
+	 * @param security The Moneydance security
+	 * @param dateInt  The date integer of the price
+	 * @param price    The scaled price
+	 * @param high     The scaled high price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param low      The scaled low price, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param volume   The volume, FixedPoint.BLANK or FixedPoint.INVALID
+	 */
+	void visit(CurrencyType security, int dateInt, long price, long high, long low, long volume)
+		throws MduException;
+
+} // end interface StagedPriceVisitor
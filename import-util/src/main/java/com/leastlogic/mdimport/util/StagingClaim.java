@@ -0,0 +1,20 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+/**
+ * Outcome of claiming a security and date in the staging registry.
+ */
+public enum StagingClaim {
+
+	/** This import holds the claim */
+	CLAIMED,
+
+	/** Another import of equal precedence holds the claim, having claimed first */
+	HELD_AT_EQUAL_PRECEDENCE,
+
+	/** Another import of higher precedence holds the claim */
+	HELD_AT_HIGHER_PRECEDENCE
+
+} // end enum StagingClaim
@@ -0,0 +1,371 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.leastlogic.moneydance.util.MduException;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the security prices staged by all the imports in this Java
+ * virtual machine. Each import claims the security and date of every price it
+ * stages. A claim held by another import is only taken over by an import of
+ * higher precedence, and a price is written only while its import still holds
+ * the claim. So when several imports stage the same security and date, the one
+ * of highest precedence, or the first of equal precedence, writes the snapshot.
+ * Unwritten claims are released when discarded; written ones are kept for the
+ * session, so an import of lower precedence cannot later overwrite the price.
+ * Security UUIDs differ between account books, so they never carry over to
+ * another book.
+ * <p>
+ * Each extension loads its own copy of this class, so the shared registry is
+ * published once as an MXBean in the platform MBean server, where every copy
+ * finds it and reaches it through its own copy of StagingRegistryMXBean. The
+ * copy that publishes it uses it directly; its class loader is then held
+ * until the virtual machine exits.
+ */
+public final class StagingRegistry {
+	private final StagingRegistryMXBean shared;
+	private final int ownerId;
+
+	/** The shared registry, when this copy of the class published it */
+	private static StagingRegistryMXBean published = null;
+
+	private static final String SHARED_REGISTRY_NAME = "com.leastlogic.mdimport:type=StagingRegistry";
+
+	/**
+	 * The shared registry. Claims are held per security, in a table of dates
+	 * to the import holding each, and are guarded by their security.
+	 */
+	private static final class SharedRegistry implements StagingRegistryMXBean {
+		private final Map<String, Integer> ownerIds = new HashMap<>();
+		private volatile int[] precedences = new int[0];
+		private final Map<String, SecurityClaims> securities = new ConcurrentHashMap<>();
+		private final Map<Integer, Set<String>> claimedSecurities = new ConcurrentHashMap<>();
+
+		public synchronized int register(String ownerName, int precedence) {
+			int id = this.ownerIds.computeIfAbsent(ownerName, name -> this.precedences.length);
+			int[] updated = Arrays.copyOf(this.precedences, Math.max(id + 1, this.precedences.length));
+			updated[id] = precedence;
+			this.precedences = updated;
+
+			return id;
+		} // end register(String, int)
+
+		public StagingClaim claim(String securityId, int dateInt, int ownerId) {
+			StagingClaim claim = this.securities
+				.computeIfAbsent(securityId, id -> new SecurityClaims())
+				.claim(dateInt, ownerId, this.precedences);
+
+			if (claim == StagingClaim.CLAIMED) {
+				this.claimedSecurities.computeIfAbsent(ownerId, id -> ConcurrentHashMap.newKeySet())
+					.add(securityId);
+			}
+
+			return claim;
+		} // end claim(String, int, int)
+
+		public boolean isClaimed(String securityId, int dateInt, int ownerId) {
+			SecurityClaims claims = this.securities.get(securityId);
+
+			return claims != null && claims.isClaimed(dateInt, ownerId);
+		} // end isClaimed(String, int, int)
+
+		public void written(String securityId, int dateInt, int ownerId) {
+			SecurityClaims claims = this.securities.get(securityId);
+
+			if (claims != null) {
+				claims.written(dateInt, ownerId);
+			}
+
+		} // end written(String, int, int)
+
+		public void releaseAll(int ownerId) {
+			Set<String> securityIds = this.claimedSecurities.remove(ownerId);
+
+			if (securityIds != null) {
+				for (String securityId : securityIds) {
+					this.securities.get(securityId).releaseAll(ownerId);
+				}
+			}
+
+		} // end releaseAll(int)
+
+		public int getClaimCount() {
+			int count = 0;
+
+			for (SecurityClaims claims : this.securities.values()) {
+				count += claims.count(true);
+			}
+
+			return count;
+		} // end getClaimCount()
+
+		public int getWrittenCount() {
+			int count = 0;
+
+			for (SecurityClaims claims : this.securities.values()) {
+				count += claims.count(false);
+			}
+
+			return count;
+		} // end getWrittenCount()
+
+	} // end class SharedRegistry
+
+	/**
+	 * The claims on the prices of one security: an open addressed table of
+	 * date integer to the import holding the claim, unwritten, and the import
+	 * that last wrote a price, each as owner id + 1, or zero when none.
+	 */
+	private static final class SecurityClaims {
+		private int[] dateInts = new int[8];
+		private int[] holders = new int[8];
+		private int[] writers = new int[8];
+		private int size = 0;
+
+		/**
+		 * @param dateInt     The date integer of the price
+		 * @param ownerId     The id of the import claiming
+		 * @param precedences The precedence of each import, by id
+		 * @return CLAIMED when the import now holds the claim, otherwise how the
+		 * other import ranks
+		 */
+		synchronized StagingClaim claim(int dateInt, int ownerId, int[] precedences) {
+			int slot = slotOf(dateInt);
+
+			if (this.dateInts[slot] == 0) {
+				this.dateInts[slot] = dateInt;
+
+				if (++this.size * 2 > this.dateInts.length) {
+					rehash();
+					slot = slotOf(dateInt);
+				}
+			}
+			int rank = Math.max(rank(this.holders[slot], ownerId, precedences),
+				rank(this.writers[slot], ownerId, precedences));
+
+			if (rank > 0)
+				return StagingClaim.HELD_AT_HIGHER_PRECEDENCE;
+
+			if (rank == 0)
+				return StagingClaim.HELD_AT_EQUAL_PRECEDENCE;
+
+			this.holders[slot] = ownerId + 1;
+
+			return StagingClaim.CLAIMED;
+		} // end claim(int, int, int[])
+
+		/**
+		 * @param other       Another import as owner id + 1, or zero when none
+		 * @param ownerId     The id of the import claiming
+		 * @param precedences The precedence of each import, by id
+		 * @return The sign of the other import's precedence compared to the
+		 * claiming import's, or -1 when there is no other import
+		 */
+		private static int rank(int other, int ownerId, int[] precedences) {
+			if (other == 0 || other == ownerId + 1)
+				return -1;
+
+			return Integer.compare(precedences[other - 1], precedences[ownerId]);
+		} // end rank(int, int, int[])
+
+		/**
+		 * @param dateInt The date integer of the price
+		 * @param ownerId The id of an import
+		 * @return True when the import holds the claim on the date, unwritten
+		 */
+		synchronized boolean isClaimed(int dateInt, int ownerId) {
+
+			return this.holders[slotOf(dateInt)] == ownerId + 1;
+		} // end isClaimed(int, int)
+
+		/**
+		 * Mark the claim on a date written, when the import still holds it.
+		 *
+		 * @param dateInt The date integer of the price
+		 * @param ownerId The id of the import that wrote the price
+		 */
+		synchronized void written(int dateInt, int ownerId) {
+			int slot = slotOf(dateInt);
+
+			if (this.holders[slot] == ownerId + 1) {
+				this.holders[slot] = 0;
+				this.writers[slot] = ownerId + 1;
+			}
+
+		} // end written(int, int)
+
+		/**
+		 * Release the unwritten claims an import holds. Their dates keep their
+		 * slots, to be claimed again.
+		 *
+		 * @param ownerId The id of the import
+		 */
+		synchronized void releaseAll(int ownerId) {
+			for (int slot = 0; slot < this.holders.length; ++slot) {
+				if (this.holders[slot] == ownerId + 1) {
+					this.holders[slot] = 0;
+				}
+			}
+
+		} // end releaseAll(int)
+
+		/**
+		 * @param claimed True to count the claims unwritten, false the dates written
+		 * @return The number of such claims
+		 */
+		synchronized int count(boolean claimed) {
+			int count = 0;
+
+			for (int holder : claimed ? this.holders : this.writers) {
+				if (holder != 0) {
+					++count;
+				}
+			}
+
+			return count;
+		} // end count(boolean)
+
+		/**
+		 * @param dateInt The date integer, never zero
+		 * @return The slot holding the date, or the empty slot where it belongs
+		 */
+		private int slotOf(int dateInt) {
+			int mask = this.dateInts.length - 1;
+			int hash = dateInt * 0x9E3779B9;
+			int slot = (hash ^ hash >>> 16) & mask;
+
+			while (this.dateInts[slot] != 0 && this.dateInts[slot] != dateInt) {
+				slot = (slot + 1) & mask;
+			}
+
+			return slot;
+		} // end slotOf(int)
+
+		/**
+		 * Double the table.
+		 */
+		private void rehash() {
+			int[] oldDateInts = this.dateInts;
+			int[] oldHolders = this.holders;
+			int[] oldWriters = this.writers;
+			this.dateInts = new int[oldDateInts.length * 2];
+			this.holders = new int[oldHolders.length * 2];
+			this.writers = new int[oldWriters.length * 2];
+
+			for (int i = 0; i < oldDateInts.length; ++i) {
+				if (oldDateInts[i] != 0) {
+					int slot = slotOf(oldDateInts[i]);
+					this.dateInts[slot] = oldDateInts[i];
+					this.holders[slot] = oldHolders[i];
+					this.writers[slot] = oldWriters[i];
+				}
+			}
+
+		} // end rehash()
+
+	} // end class SecurityClaims
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param ownerName  The name of the import making claims; an import of the
+	 *                   same name holds the same claims
+	 * @param precedence The precedence of the import's claims; higher wins
+	 */
+	public StagingRegistry(String ownerName, int precedence) throws MduException {
+		try {
+			this.shared = sharedRegistry(ManagementFactory.getPlatformMBeanServer(),
+				new ObjectName(SHARED_REGISTRY_NAME));
+			this.ownerId = this.shared.register(ownerName, precedence);
+		} catch (JMException | RuntimeException e) {
+			throw new MduException(e, "Unable to share staged prices with other imports");
+		}
+
+	} // end (String, int) constructor
+
+	/**
+	 * Publish the shared registry, unless another copy of this class already
+	 * has.
+	 *
+	 * @param server The platform MBean server
+	 * @param name   The name of the shared registry
+	 * @return The shared registry, or a proxy for it
+	 */
+	private static synchronized StagingRegistryMXBean sharedRegistry(MBeanServer server,
+			ObjectName name) throws JMException {
+		if (published == null && !server.isRegistered(name)) {
+			SharedRegistry registry = new SharedRegistry();
+			try {
+				server.registerMBean(new StandardMBean(registry, StagingRegistryMXBean.class, true),
+					name);
+				published = registry;
+			} catch (InstanceAlreadyExistsException e) {
+				// published by another import meanwhile
+			}
+		}
+
+		return published != null
+			? published
+			: JMX.newMXBeanProxy(server, name, StagingRegistryMXBean.class);
+	} // end sharedRegistry(MBeanServer, ObjectName)
+
+	/**
+	 * Claim a security and date, unless another import of equal or higher
+	 * precedence already holds the claim or wrote a price for it.
+	 *
+	 * @param security The Moneydance security
+	 * @param dateInt  The date integer of the price
+	 * @return CLAIMED when this import now holds the claim, otherwise how the
+	 * other import holding it ranks
+	 */
+	public StagingClaim claim(CurrencyType security, int dateInt) {
+
+		return this.shared.claim(security.getUUID(), dateInt, this.ownerId);
+	} // end claim(CurrencyType, int)
+
+	/**
+	 * Write a price, when this import still holds its claim, then keep the
+	 * claim as written. An import of higher precedence taking the claim over
+	 * meanwhile writes its own price afterward.
+	 *
+	 * @param security The Moneydance security
+	 * @param dateInt  The date integer of the price
+	 * @param write    Writes the price
+	 * @return True when the price was written
+	 */
+	public boolean writeIfClaimed(CurrencyType security, int dateInt, Runnable write) {
+		String securityId = security.getUUID();
+
+		if (!this.shared.isClaimed(securityId, dateInt, this.ownerId))
+			return false; // taken over by an import of higher precedence
+
+		write.run();
+		this.shared.written(securityId, dateInt, this.ownerId);
+
+		return true;
+	} // end writeIfClaimed(CurrencyType, int, Runnable)
+
+	/**
+	 * Release all the claims this import still holds, unwritten.
+	 */
+	public void releaseAll() {
+		this.shared.releaseAll(this.ownerId);
+
+	} // end releaseAll()
+
+} // end class StagingRegistry
@@ -0,0 +1,68 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+/**
+ * Management interface of the staging registry shared by all the imports in
+ * this Java virtual machine. Only open types cross it, so each extension
+ * reaches the registry through its own copy of this interface. Securities are
+ * identified by their UUIDs and imports by the ids registered for them.
+ */
+public interface StagingRegistryMXBean {
+
+	/**
+	 * @param ownerName  The name of an import
+	 * @param precedence The precedence of the import's claims; higher wins
+	 * @return The id of the import, the same each time its name is registered
+	 */
+	int register(String ownerName, int precedence);
+
+	/**
+	 * Claim a security and date, unless another import of equal or higher
+	 * precedence already holds the claim or wrote a price for it.
+	 *
+	 * @param securityId The UUID of the Moneydance security
+	 * @param dateInt    The date integer of the price
+	 * @param ownerId    The id of the import claiming
+	 * @return CLAIMED when the import now holds the claim, otherwise how the
+	 * other import ranks
+	 */
+	StagingClaim claim(String securityId, int dateInt, int ownerId);
+
+	/**
+	 * @param securityId The UUID of the Moneydance security
+	 * @param dateInt    The date integer of the price
+	 * @param ownerId    The id of an import
+	 * @return True when the import holds the claim, unwritten
+	 */
+	boolean isClaimed(String securityId, int dateInt, int ownerId);
+
+	/**
+	 * Record that an import wrote the price it claimed, so imports of lower
+	 * precedence can no longer claim the security and date.
+	 *
+	 * @param securityId The UUID of the Moneydance security
+	 * @param dateInt    The date integer of the price
+	 * @param ownerId    The id of the import that wrote the price
+	 */
+	void written(String securityId, int dateInt, int ownerId);
+
+	/**
+	 * Release the unwritten claims an import holds.
+	 *
+	 * @param ownerId The id of the import
+	 */
+	void releaseAll(int ownerId);
+
+	/**
+	 * @return The number of claims held, unwritten
+	 */
+	int getClaimCount();
+
+	/**
+	 * @return The number of prices written under claims
+	 */
+	int getWrittenCount();
+
+} // end interface StagingRegistryMXBean
@@ -0,0 +1,84 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencyTable;
+import com.infinitekind.moneydance.model.CurrencyType;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Index of the Moneydance currencies by ticker symbol, ignoring case, built
+ * once from the currency table. Symbols found to be unknown are remembered,
+ * so each one is reported only once until forgotten.
+ */
+public class TickerIndex {
+	private final Map<String, CurrencyType> currencies = new HashMap<>();
+	private final Set<String> unknown = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param currencyTable Moneydance currency table
+	 */
+	public TickerIndex(CurrencyTable currencyTable) {
+		for (CurrencyType currency : currencyTable.getAllCurrencies()) {
+			String ticker = currency.getTickerSymbol();
+
+			if (ticker != null && !ticker.isBlank()) {
+				// keep the first currency with each symbol
+				this.currencies.putIfAbsent(normalize(ticker), currency);
+			}
+		} // end for
+
+	} // end (CurrencyTable) constructor
+
+	/**
+	 * @param ticker A ticker symbol
+	 * @return The symbol in the form used as a key
+	 */
+	private static String normalize(String ticker) {
+
+		return ticker.trim().toUpperCase(Locale.ROOT);
+	} // end normalize(String)
+
+	/**
+	 * @param ticker Ticker symbol
+	 * @return The Moneydance currency with this symbol, or null when none
+	 */
+	public CurrencyType getSecurity(String ticker) {
+
+		return getSecurity(ticker, unknownTicker -> { });
+	} // end getSecurity(String)
+
+	/**
+	 * @param ticker        Ticker symbol
+	 * @param reportUnknown Called the first time each unknown symbol is sought
+	 * @return The Moneydance currency with this symbol, or null when none
+	 */
+	public CurrencyType getSecurity(String ticker, Consumer<String> reportUnknown) {
+		String key = normalize(ticker);
+		CurrencyType security = this.currencies.get(key);
+
+		if (security == null && this.unknown.add(key)) {
+			reportUnknown.accept(ticker);
+		}
+
+		return security;
+	} // end getSecurity(String, Consumer<String>)
+
+	/**
+	 * Forget the symbols found to be unknown, so they are reported again.
+	 */
+	public void forgetUnknown() {
+		this.unknown.clear();
+
+	} // end forgetUnknown()
+
+} // end class TickerIndex
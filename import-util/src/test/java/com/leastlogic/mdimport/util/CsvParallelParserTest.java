@@ -0,0 +1,181 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that parsing in parallel yields the same rows as parsing sequentially.
+ */
+public class CsvParallelParserTest {
+	@TempDir
+	Path tempDir;
+
+	/** Enough bytes for the parallel parser to cut several chunks */
+	private static final int FILE_SIZE = 2 << 20;
+
+	private enum WideColumn implements CsvColumn {
+		FIRST("col.first"),
+		MIDDLE("col.middle"),
+		LAST("col.last");
+
+		private final String propKey;
+
+		WideColumn(String propKey) {
+			this.propKey = propKey;
+		}
+
+		public String propKey() {
+
+			return this.propKey;
+		}
+	} // end enum WideColumn
+
+	@Test
+	public void wideFileProjectingLateColumn() throws Exception {
+		Path file = write("wide.csv", header(20), (row, text) -> {
+			for (int field = 0; field < 20; ++field) {
+				text.append(field == 0 ? "" : ",").append('r').append(row).append('f').append(field);
+			}
+		});
+		Properties props = props("f0", "f5", "f19");
+
+		assertParity(file, props);
+	} // end wideFileProjectingLateColumn()
+
+	@Test
+	public void quotedFieldsAndEmbeddedNewLines() throws Exception {
+		Path file = write("quoted.csv", header(4), (row, text) -> text.append("\"r").append(row)
+			.append(row % 7 == 0 ? "\r\nsecond line" : "").append("\",\"a \"\"b\"\"\",c,").append(row));
+		Properties props = props("f0", "f1", "f3");
+
+		assertParity(file, props);
+	} // end quotedFieldsAndEmbeddedNewLines()
+
+	@Test
+	public void strayQuotesInUnquotedFields() throws Exception {
+		Path file = write("stray.csv", header(3), (row, text) -> text.append("Fund ").append(row)
+			.append(row % 1000 == 17 ? "\" pipe" : "").append(",x,").append(row));
+		Properties props = props("f0", "f1", "f2");
+		List<String> sequential = parseSequentially(file, props);
+
+		assertEquals(rowCount(file) - 1, sequential.size());
+		assertSameRows(sequential, parseInParallel(file, props));
+	} // end strayQuotesInUnquotedFields()
+
+	/**
+	 * Appends the text of one data record, without its line terminator.
+	 */
+	@FunctionalInterface
+	private interface RecordWriter {
+		void write(int row, StringBuilder text);
+	} // end interface RecordWriter
+
+	private Path write(String fileName, String header, RecordWriter writer) throws IOException {
+		StringBuilder text = new StringBuilder(FILE_SIZE + 1024).append(header).append("\r\n");
+
+		for (int row = 1; text.length() < FILE_SIZE; ++row) {
+			writer.write(row, text);
+			text.append("\r\n");
+		}
+		Path file = this.tempDir.resolve(fileName);
+		Files.writeString(file, text, UTF_8);
+
+		return file;
+	} // end write(String, String, RecordWriter)
+
+	private static String header(int width) {
+		StringBuilder header = new StringBuilder();
+
+		for (int field = 0; field < width; ++field) {
+			header.append(field == 0 ? "" : ",").append('f').append(field);
+		}
+
+		return header.toString();
+	} // end header(int)
+
+	private static Properties props(String first, String middle, String last) {
+		Properties props = new Properties();
+		props.setProperty(WideColumn.FIRST.propKey(), first);
+		props.setProperty(WideColumn.MIDDLE.propKey(), middle);
+		props.setProperty(WideColumn.LAST.propKey(), last);
+
+		return props;
+	} // end props(String, String, String)
+
+	private static long rowCount(Path file) throws IOException {
+		try (CsvTokenizer tokenizer = CsvTokenizer.open(file)) {
+			long count = 0;
+
+			while (tokenizer.next()) {
+				++count;
+			}
+
+			return count;
+		}
+	} // end rowCount(Path)
+
+	private static void assertParity(Path file, Properties props) throws Exception {
+		List<String> sequential = parseSequentially(file, props);
+
+		assertTrue(sequential.size() > 1000);
+		assertSameRows(sequential, parseInParallel(file, props));
+	} // end assertParity(Path, Properties)
+
+	private static void assertSameRows(List<String> expected, List<String> actual) {
+		int common = Math.min(expected.size(), actual.size());
+
+		for (int i = 0; i < common; ++i) {
+			assertEquals(expected.get(i), actual.get(i), "row index " + i);
+		}
+		assertEquals(expected.size(), actual.size(), "number of rows");
+	} // end assertSameRows(List<String>, List<String>)
+
+	private static List<String> parseSequentially(Path file, Properties props) throws Exception {
+		try (CsvTokenizer tokenizer = open(file, props)) {
+			List<String> rows = new ArrayList<>();
+
+			while (tokenizer.next()) {
+				rows.add(describe(tokenizer.toRow()));
+			}
+
+			return rows;
+		}
+	} // end parseSequentially(Path, Properties)
+
+	private static List<String> parseInParallel(Path file, Properties props) throws Exception {
+		try (CsvTokenizer tokenizer = open(file, props)) {
+
+			return CsvParallelParser.parse(tokenizer, CsvParallelParserTest::describe);
+		}
+	} // end parseInParallel(Path, Properties)
+
+	private static CsvTokenizer open(Path file, Properties props) throws Exception {
+		CsvTokenizer tokenizer = CsvTokenizer.open(file);
+		tokenizer.next();
+		tokenizer.project(CsvColumnPlan.compile(WideColumn.values(), props,
+			tokenizer.getFields(), file.toString()));
+
+		return tokenizer;
+	} // end open(Path, Properties)
+
+	private static String describe(CsvRow row) {
+
+		return row.getRowNumber() + ":" + row.getFieldCount() + ":" + row.get(WideColumn.FIRST)
+			+ '|' + row.get(WideColumn.MIDDLE) + '|' + row.get(WideColumn.LAST);
+	} // end describe(CsvRow)
+
+} // end class CsvParallelParserTest
@@ -0,0 +1,173 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how records and fields are found, in mapped files and in streamed
+ * input read a byte at a time, so records straddle every buffer boundary.
+ */
+public class CsvTokenizerTest {
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void skipsByteOrderMark(boolean mapped) throws Exception {
+		List<List<String>> records = records("\uFEFFa,b\r\n1,2\r\n", mapped);
+
+		assertEquals(List.of(List.of("a", "b"), List.of("1", "2")), records);
+	} // end skipsByteOrderMark(boolean)
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void endsLinesAtCrLfLfOrCr(boolean mapped) throws Exception {
+		List<List<String>> records = records("a,b\r\nc,d\ne,f\rg,h", mapped);
+
+		assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"),
+			List.of("g", "h")), records);
+	} // end endsLinesAtCrLfLfOrCr(boolean)
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void keepsNewLinesAndDoubledQuotesInQuotedFields(boolean mapped) throws Exception {
+		List<List<String>> records = records("\"x\r\ny\",\"say \"\"hi\"\"\",\r\nz,\"\"\r\n", mapped);
+
+		assertEquals(List.of(List.of("x\r\ny", "say \"hi\"", ""), List.of("z", "")), records);
+	} // end keepsNewLinesAndDoubledQuotesInQuotedFields(boolean)
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void endsAtBlankLine(boolean mapped) throws Exception {
+		assertEndsAfterOneRecord("h1,h2\r\n1,2\r\n\r\nDisclaimer\r\n",
+			CsvEndRule.BLANK_LINE_KEY, "true", mapped);
+	} // end endsAtBlankLine(boolean)
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void endsAtShapeMismatch(boolean mapped) throws Exception {
+		assertEndsAfterOneRecord("h1,h2\r\n1,2\r\nSee notes\r\n3,4\r\n",
+			CsvEndRule.SHAPE_MISMATCH_KEY, "true", mapped);
+	} // end endsAtShapeMismatch(boolean)
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	public void endsAtMarker(boolean mapped) throws Exception {
+		assertEndsAfterOneRecord("h1,h2\r\n1,2\r\n\"Date downloaded\",x\r\n3,4\r\n",
+			CsvEndRule.MARKER_KEY, "^\"?Date downloaded", mapped);
+	} // end endsAtMarker(boolean)
+
+	@Test
+	public void numbersRecordsAndKeepsRecordText() throws Exception {
+		try (CsvTokenizer tokenizer = open("a,\"b\r\nc\"\r\nd\r\n", true)) {
+			assertTrue(tokenizer.next());
+			assertEquals(1, tokenizer.getRecordNumber());
+			assertEquals("a,\"b\r\nc\"", tokenizer.getRecordText());
+			assertTrue(tokenizer.next());
+			assertEquals(2, tokenizer.getRecordNumber());
+			assertEquals("d", tokenizer.getRecordText());
+			assertFalse(tokenizer.next());
+		}
+	} // end numbersRecordsAndKeepsRecordText()
+
+	@Test
+	public void mapsFilesButNotStreams() throws Exception {
+		try (CsvTokenizer mapped = open("a\r\n", true); CsvTokenizer streamed = open("a\r\n", false)) {
+			assertTrue(mapped.isMapped());
+			assertFalse(streamed.isMapped());
+		}
+	} // end mapsFilesButNotStreams()
+
+	@Test
+	public void rejectsUtf16AndClosesInput() {
+		boolean[] closed = {false};
+		InputStream in = new ByteArrayInputStream(new byte[] {(byte) 0xFF, (byte) 0xFE, 'a', 0}) {
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		assertThrows(IOException.class, () -> CsvTokenizer.open(in, "utf16"));
+		assertTrue(closed[0]);
+	} // end rejectsUtf16AndClosesInput()
+
+	/**
+	 * Read the header, then expect one data record before the end rule stops.
+	 */
+	private void assertEndsAfterOneRecord(String text, String key, String value, boolean mapped)
+			throws Exception {
+		Properties props = new Properties();
+		props.setProperty(key, value);
+
+		try (CsvTokenizer tokenizer = open(text, mapped)) {
+			assertTrue(tokenizer.next());
+			tokenizer.endAt(CsvEndRule.compile(props, tokenizer.getFieldCount(), text));
+
+			assertTrue(tokenizer.next());
+			assertEquals(List.of("1", "2"), List.of(tokenizer.getFields()));
+			assertFalse(tokenizer.next());
+			assertTrue(tokenizer.isEnded());
+			assertFalse(tokenizer.next());
+		}
+	} // end assertEndsAfterOneRecord(String, String, String, boolean)
+
+	/**
+	 * @return The fields of each record of the text
+	 */
+	private List<List<String>> records(String text, boolean mapped) throws IOException {
+		try (CsvTokenizer tokenizer = open(text, mapped)) {
+			List<List<String>> records = new ArrayList<>();
+
+			while (tokenizer.next()) {
+				records.add(List.of(tokenizer.getFields()));
+			}
+
+			return records;
+		}
+	} // end records(String, boolean)
+
+	/**
+	 * @param text   The input text
+	 * @param mapped True to map the text from a file, false to stream it a
+	 *               byte at a time
+	 * @return A tokenizer over the text
+	 */
+	private CsvTokenizer open(String text, boolean mapped) throws IOException {
+		byte[] bytes = text.getBytes(UTF_8);
+
+		if (mapped) {
+			Path file = Files.write(this.tempDir.resolve("input.csv"), bytes);
+
+			return CsvTokenizer.open(file);
+		}
+		InputStream trickle = new ByteArrayInputStream(bytes) {
+			public synchronized int read(byte[] b, int off, int len) {
+
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+
+		return CsvTokenizer.open(trickle, "streamed");
+	} // end open(String, boolean)
+
+} // end class CsvTokenizerTest
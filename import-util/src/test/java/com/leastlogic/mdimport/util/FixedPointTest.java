@@ -0,0 +1,83 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks parsing decimal text to scaled longs, and converting back.
+ */
+public class FixedPointTest {
+
+	@Test
+	public void parsesToScale() {
+		assertEquals(1234, parse("12.34", 2));
+		assertEquals(1230, parse("12.3", 2));
+		assertEquals(1200, parse("12", 2));
+		assertEquals(50, parse(".5", 2));
+		assertEquals(-1234, parse("-12.34", 2));
+		assertEquals(1234, parse("+12.34", 2));
+		assertEquals(7000, parse(" \t7 ", 3));
+	} // end parsesToScale()
+
+	@Test
+	public void roundsHalfAwayFromZero() {
+		assertEquals(1235, parse("12.345", 2));
+		assertEquals(1234, parse("12.3449", 2));
+		assertEquals(-1235, parse("-12.345", 2));
+		assertEquals(200, parse("1.999", 2));
+		assertEquals(1, parse("0.5", 0));
+		assertEquals(0, parse("0.49", 0));
+	} // end roundsHalfAwayFromZero()
+
+	@Test
+	public void reportsBlankAndInvalidText() {
+		assertEquals(FixedPoint.BLANK, parse("", 2));
+		assertEquals(FixedPoint.BLANK, parse("  ", 2));
+		assertEquals(FixedPoint.INVALID, parse("-", 2));
+		assertEquals(FixedPoint.INVALID, parse(".", 2));
+		assertEquals(FixedPoint.INVALID, parse("1.2.3", 2));
+		assertEquals(FixedPoint.INVALID, parse("1,234", 2));
+		assertEquals(FixedPoint.INVALID, parse("N/A", 2));
+		assertEquals(FixedPoint.INVALID, parse("99999999999999999999", 0));
+		assertEquals(FixedPoint.INVALID, parse("999999999999", 8));
+		assertFalse(FixedPoint.isNumber(FixedPoint.BLANK));
+		assertFalse(FixedPoint.isNumber(FixedPoint.INVALID));
+		assertTrue(FixedPoint.isNumber(-1));
+	} // end reportsBlankAndInvalidText()
+
+	@Test
+	public void parsesWithinBufferRange() {
+		ByteBuffer buf = ByteBuffer.wrap("x,12.5,y".getBytes(US_ASCII));
+
+		assertEquals(125, FixedPoint.parse(buf, 2, 6, 1));
+	} // end parsesWithinBufferRange()
+
+	@Test
+	public void convertsBack() {
+		assertEquals(12.35, FixedPoint.toDouble(1235, 2));
+		assertEquals("12.34", FixedPoint.toBigDecimal(123400, 4).toPlainString());
+		assertEquals("100", FixedPoint.toBigDecimal(1000000, 4).toString());
+		assertEquals(0, FixedPoint.toBigDecimal(1000000, 4).scale());
+	} // end convertsBack()
+
+	/**
+	 * @param text  ASCII decimal text
+	 * @param scale The number of decimal places to keep
+	 * @return The text parsed to a scaled long
+	 */
+	private static long parse(String text, int scale) {
+		byte[] bytes = text.getBytes(US_ASCII);
+
+		return FixedPoint.parse(ByteBuffer.wrap(bytes), 0, bytes.length, scale);
+	} // end parse(String, int)
+
+} // end class FixedPointTest
@@ -0,0 +1,125 @@
+/*
+ * Created on Oct 17, 2026
+ */
+package com.leastlogic.mdimport.util;
+
+import com.infinitekind.moneydance.model.CurrencyType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the order in which staged prices are visited, in memory and spilled.
+ */
+public class PriceStagingTest {
+
+	/** Budget small enough to spill a run every hundred rows or so */
+	private static final long SMALL_BUDGET = 100 * 48;
+
+	@Test
+	public void visitsBySecurityInOrderFirstStagedThenByDate() throws Exception {
+		CurrencyType first = new CurrencyType();
+		CurrencyType second = new CurrencyType();
+		PriceStaging staging = new PriceStaging(4);
+		staging.add(second, 20260103, 3);
+		staging.add(first, 20260102, 2);
+		staging.add(second, 20260101, 1);
+		staging.add(first, 20260101, 4);
+
+		assertEquals(List.of("1:20260101=1", "1:20260103=3", "2:20260101=4", "2:20260102=2"),
+			visit(staging, second, first));
+	} // end visitsBySecurityInOrderFirstStagedThenByDate()
+
+	@Test
+	public void laterPriceForSameSecurityAndDateWins() throws Exception {
+		CurrencyType security = new CurrencyType();
+		PriceStaging staging = new PriceStaging(4);
+		staging.add(security, 20260101, 1);
+		staging.add(security, 20260101, 2);
+
+		assertEquals(List.of("1:20260101=2"), visit(staging, security));
+	} // end laterPriceForSameSecurityAndDateWins()
+
+	@Test
+	public void spilledRunsMergeLikeRowsHeldInMemory() throws Exception {
+		CurrencyType[] securities = new CurrencyType[50];
+
+		for (int i = 0; i < securities.length; ++i) {
+			securities[i] = new CurrencyType();
+		}
+		PriceStaging held = new PriceStaging(4);
+		PriceStaging spilled = new PriceStaging(4);
+		spilled.setMemoryBudget(SMALL_BUDGET);
+		Random random = new Random(17);
+
+		for (int i = 0; i < 20_000; ++i) {
+			CurrencyType security = securities[random.nextInt(securities.length)];
+			int dateInt = 20260101 + random.nextInt(28);
+			long price = random.nextInt(1_000_000);
+			held.add(security, dateInt, price);
+			spilled.add(security, dateInt, price);
+		} // end for
+
+		try {
+			assertTrue(spillFiles() > 0);
+			assertEquals(visit(held, securities), visit(spilled, securities));
+		} finally {
+			spilled.clear();
+		}
+	} // end spilledRunsMergeLikeRowsHeldInMemory()
+
+	@Test
+	public void clearDeletesSpillFile() throws Exception {
+		long before = spillFiles();
+		CurrencyType security = new CurrencyType();
+		PriceStaging staging = new PriceStaging(4);
+		staging.setMemoryBudget(SMALL_BUDGET);
+
+		for (int dateInt = 1; dateInt <= 1000; ++dateInt) {
+			staging.add(security, dateInt, dateInt);
+		}
+		assertTrue(spillFiles() > before);
+		assertFalse(staging.isEmpty());
+
+		staging.clear();
+		assertTrue(staging.isEmpty());
+		assertEquals(before, spillFiles());
+	} // end clearDeletesSpillFile()
+
+	/**
+	 * @param staging    The staged prices to visit
+	 * @param securities The securities, numbered from one for the result
+	 * @return Each price visited, as security number, date and price
+	 */
+	private static List<String> visit(PriceStaging staging, CurrencyType... securities)
+			throws Exception {
+		List<CurrencyType> numbering = List.of(securities);
+		List<String> visited = new ArrayList<>();
+		staging.forEach((security, dateInt, price, high, low, volume) -> visited.add(
+			(numbering.indexOf(security) + 1) + ":" + dateInt + '=' + price));
+
+		return visited;
+	} // end visit(PriceStaging, CurrencyType...)
+
+	/**
+	 * @return The number of spill files in the temporary directory
+	 */
+	private static long spillFiles() throws IOException {
+		try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+
+			return files.filter(file -> file.getFileName().toString().startsWith("price-staging"))
+				.count();
+		}
+	} // end spillFiles()
+
+} // end class PriceStagingTest
@@ -3,6 +3,8 @@
  */
 package com.moneydance.modules.features.yqimport;
 
+import com.infinitekind.moneydance.model.AccountBook;
+import com.leastlogic.mdimport.util.BookIndexes;
 import com.leastlogic.moneydance.util.MdLog;
 import com.moneydance.apps.md.controller.FeatureModule;
 
@@ -12,6 +14,7 @@ import com.moneydance.apps.md.controller.FeatureModule;
 public class Main extends FeatureModule implements AutoCloseable {
 	private YqImportWindow importWindow = null;
 	private YqImporter importer = null;
+	private BookIndexes indexes = null;
 
 	/**
 	 * Register this module to be invoked via the Extensions menu.
@@ -33,10 +36,35 @@ public class Main extends FeatureModule implements AutoCloseable {
 		MdLog.all("%s invoked with uri [%s]".formatted(getName(), uri));
 		showWindow();
 
-		this.importer = new YqImporter(this.importWindow, getContext().getCurrentAccountBook());
+		synchronized (this) {
+			if (this.importer != null) {
+				// release what an earlier import staged but did not commit
+				this.importer.forgetChanges();
+			}
+			this.importer = new YqImporter(this.importWindow,
+				getIndexes(getContext().getCurrentAccountBook()));
+		}
 
 	} // end invoke(String)
 
+	/**
+	 * Lookup indexes outlive our console window while the same account book is
+	 * open, so later imports start with them already built.
+	 *
+	 * @param accountBook The current Moneydance account book
+	 * @return Lookup indexes over the account book
+	 */
+	private synchronized BookIndexes getIndexes(AccountBook accountBook) {
+		if (this.indexes == null || this.indexes.getAccountBook() != accountBook) {
+			if (this.indexes != null) {
+				this.indexes.close();
+			}
+			this.indexes = new BookIndexes(accountBook);
+		}
+
+		return this.indexes;
+	} // end getIndexes(AccountBook)
+
 	/**
 	 * Import the selected file using the specified market date.
 	 */
@@ -67,6 +95,10 @@ public class Main extends FeatureModule implements AutoCloseable {
 	public synchronized void cleanup() {
 		if (this.importWindow != null)
 			this.importWindow = this.importWindow.goAway();
+		if (this.indexes != null) {
+			this.indexes.close();
+			this.indexes = null;
+		}
 
 	} // end cleanup()
 
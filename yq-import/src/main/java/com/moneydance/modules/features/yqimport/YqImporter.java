@@ -3,11 +3,20 @@
  */
 package com.moneydance.modules.features.yqimport;
 
-import com.infinitekind.moneydance.model.AccountBook;
 import com.infinitekind.moneydance.model.CurrencySnapshot;
-import com.infinitekind.moneydance.model.CurrencyTable;
 import com.infinitekind.moneydance.model.CurrencyType;
+import com.leastlogic.mdimport.util.BookIndexes;
+import com.leastlogic.mdimport.util.CsvColumn;
+import com.leastlogic.mdimport.util.CsvDateCache;
 import com.leastlogic.mdimport.util.CsvProcessor;
+import com.leastlogic.mdimport.util.CsvRow;
+import com.leastlogic.mdimport.util.FixedPoint;
+import com.leastlogic.mdimport.util.KeyedGroupWork;
+import com.leastlogic.mdimport.util.KeyedStage;
+import com.leastlogic.mdimport.util.PriceChangePolicy;
+import com.leastlogic.mdimport.util.PriceStaging;
+import com.leastlogic.mdimport.util.SnapshotCache;
+import com.leastlogic.mdimport.util.TickerIndex;
 import com.leastlogic.moneydance.util.*;
 import com.leastlogic.swing.util.HTMLPane;
 
@@ -15,21 +24,137 @@ import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * Module used to import Yahoo quote data into Moneydance.
+ * Data record to hold an imported row.
+ *
+ * @param ticker        Ticker symbol
+ * @param price         Price, scaled by PRICE_SCALE
+ * @param effectiveDate Effective date
+ * @param effDateInt    Effective date as a Moneydance date integer
+ * @param highPrice     High price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+ * @param lowPrice      Low price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+ * @param volume        Volume, FixedPoint.BLANK or FixedPoint.INVALID
+ */
+record QuoteRec(
+	String ticker,
+	long price,
+	LocalDate effectiveDate,
+	int effDateInt,
+	long highPrice,
+	long lowPrice,
+	long volume) {
+
+	/** Decimal places kept for prices */
+	static final int PRICE_SCALE = 8;
+
+} // end record QuoteRec
+
+/**
+ * A quote with the Moneydance security for its ticker symbol and what was
+ * read from the security's price snapshots, held only until compared. Only
+ * the security's identity is used on fork-join workers; everything else they
+ * need is copied here on the calling thread.
+ *
+ * @param security        The Moneydance security
+ * @param name            Name of the security
+ * @param ticker          Ticker symbol
+ * @param effDateInt      Effective date as a Moneydance date integer
+ * @param price           Price, scaled by PRICE_SCALE
+ * @param highPrice       High price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+ * @param lowPrice        Low price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+ * @param volume          Volume, FixedPoint.BLANK or FixedPoint.INVALID
+ * @param snapshotDateInt Date integer of the latest snapshot on or before the
+ *                        effective date, or zero when none
+ * @param snapshotPrice   Price of that snapshot, or one when none
+ * @param notes           Lines logged validating that snapshot's price
  */
-public class YqImporter extends CsvProcessor implements StagedInterface {
-	private final CurrencyTable securities;
+record SecurityQuote(
+	CurrencyType security,
+	String name,
+	String ticker,
+	int effDateInt,
+	long price,
+	long highPrice,
+	long lowPrice,
+	long volume,
+	int snapshotDateInt,
+	BigDecimal snapshotPrice,
+	List<String> notes) {
+
+} // end record SecurityQuote
+
+/**
+ * Columns read from each row, keyed by the property holding the header text.
+ */
+enum YqColumn implements CsvColumn {
+	TICKER("col.ticker", true),
+	PRICE("col.price", true),
+	DATE("col.date", true),
+	HIGH("col.high", false),
+	LOW("col.low", false),
+	VOL("col.vol", false);
+
+	private final String propKey;
+	private final boolean required;
+
+	YqColumn(String propKey, boolean required) {
+		this.propKey = propKey;
+		this.required = required;
+
+	} // end (String, boolean) constructor
 
-	private final LinkedHashMap<CurrencyType, SecurityHandler> priceChanges = new LinkedHashMap<>();
+	public String propKey() {
+
+		return this.propKey;
+	} // end propKey()
+
+	public boolean isRequired() {
+
+		return this.required;
+	} // end isRequired()
+
+} // end enum YqColumn
+
+/**
+ * Module used to import Yahoo quote data into Moneydance.
+ */
+public class YqImporter extends CsvProcessor<QuoteRec> implements StagedInterface {
+	private final BookIndexes indexes;
+	private TickerIndex tickers = null;
+	private SnapshotCache snapshots = null;
+	private PriceChangePolicy policy = null;
+	private final AtomicInteger numSuppressed = new AtomicInteger();
+	private boolean backfill = false;
+
+	private final PriceStaging heldQuotes = new PriceStaging(QuoteRec.PRICE_SCALE);
+	private final ArrayList<SecurityQuote> batch = new ArrayList<>();
+	private final HashSet<CurrencyType> settled = new HashSet<>();
+	private CurrencySnapshot pricedSnapshot = null;
+	private BigDecimal snapshotPrice = null;
+	private final PriceStaging priceChanges = new PriceStaging(QuoteRec.PRICE_SCALE);
 	private final LinkedHashSet<LocalDate> dates = new LinkedHashSet<>();
+	private final CsvDateCache dateCache = new CsvDateCache(marketDateFmt);
+
+	/** Property key; true to stage every quote of each security, not just its first */
+	public static final String BACKFILL_KEY = "import.backfill";
 
 	private static final String propertiesFileName = "yq-import.properties";
+	private static final int STAGING_PRECEDENCE = 1;
+
+	/** Quotes compared at a time, on fork-join workers when enough */
+	private static final int BATCH_SIZE = 4096;
+
 	private static final DateTimeFormatter marketDateFmt = DateTimeFormatter.ofPattern("yyyy/M/d");
 	private static final DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("E MMM d, y");
 
@@ -37,25 +162,63 @@ public class YqImporter extends CsvProcessor implements StagedInterface {
 	 * Sole constructor.
 	 *
 	 * @param importWindow Our import console
-	 * @param accountBook  Moneydance account book
+	 * @param indexes      Lookup indexes over the Moneydance account book
 	 */
-	public YqImporter(YqImportWindow importWindow, AccountBook accountBook) {
-		super(importWindow, propertiesFileName);
-		this.securities = accountBook.getCurrencies();
+	public YqImporter(YqImportWindow importWindow, BookIndexes indexes) {
+		super(importWindow, propertiesFileName, YqColumn.values());
+		this.indexes = indexes;
 		importWindow.setStaged(this);
 
-	} // end (YqImportWindow, AccountBook) constructor
+	} // end (YqImportWindow, BookIndexes) constructor
 
 	/**
 	 * Import the selected comma separated value file.
 	 */
 	public void importFile() throws MduException {
-		this.impWin.addText("Importing price data from file %s"
-			.formatted(this.impWin.getFileToImport().getFileName()));
+		this.impWin.addText("Importing price data from %s"
+			.formatted(this.impWin.getInputSource().getName()));
+
+		this.tickers = this.indexes.getTickers();
+		this.tickers.forgetUnknown();
+		this.snapshots = this.indexes.getSnapshots();
+		long stagingBudget = getStagingBudget();
+		this.heldQuotes.setMemoryBudget(stagingBudget);
+		this.priceChanges.setMemoryBudget(stagingBudget);
+		this.priceChanges.setRegistry(getStagingRegistry("YQ Import", STAGING_PRECEDENCE));
+		this.policy = getChangePolicy();
+		this.backfill = isPropertySet(BACKFILL_KEY);
+		this.numSuppressed.set(0);
+		try {
+			processFile();
 
-		processFile();
-		this.impWin.addText("Found effective date%s %s".formatted(this.dates.size() == 1 ? "" : "s",
-			this.dates.stream().map(dt -> dt.format(dateFmt)).collect(Collectors.joining("; "))));
+			if (isHeldBySecurity()) {
+				stageHeldQuotes();
+			} else {
+				stageBatch();
+			}
+		} finally {
+			this.batch.clear();
+			this.heldQuotes.clear();
+			this.settled.clear();
+			this.pricedSnapshot = null;
+			this.snapshotPrice = null;
+		}
+		int suppressed = this.numSuppressed.get();
+
+		if (suppressed > 0) {
+			this.impWin.addText("Suppressed %d price change%s under the change policy"
+				.formatted(suppressed, suppressed == 1 ? "" : "s"));
+		}
+
+		reportDeferred(this.priceChanges);
+
+		if (this.backfill && this.dates.size() > 1) {
+			this.impWin.addText("Found %d effective dates from %s to %s".formatted(this.dates.size(),
+				Collections.min(this.dates).format(dateFmt), Collections.max(this.dates).format(dateFmt)));
+		} else {
+			this.impWin.addText("Found effective date%s %s".formatted(this.dates.size() == 1 ? "" : "s",
+				this.dates.stream().map(dt -> dt.format(dateFmt)).collect(Collectors.joining("; "))));
+		}
 
 		if (!isModified()) {
 			this.impWin.addText("No new price data found");
@@ -64,114 +227,360 @@ public class YqImporter extends CsvProcessor implements StagedInterface {
 	} // end importFile()
 
 	/**
-	 * Import this row of the comma separated value file.
+	 * Retrieve data from columns in a row
+	 * @param row The row to read
+	 * @return Populated QuoteRec instance
 	 */
-	protected void processRow() throws MduException {
-		CurrencyType security = this.securities.getCurrencyByTickerSymbol(getCol("col.ticker"));
-		LocalDate effectiveDate = parseDate(getCol("col.date"));
+	protected QuoteRec importRow(CsvRow row) throws MduException {
+		CsvDateCache.ImportDate effectiveDate = this.dateCache.get(row, YqColumn.DATE);
+
+		return new QuoteRec(
+			row.get(YqColumn.TICKER),
+			row.requireScaled(YqColumn.PRICE, QuoteRec.PRICE_SCALE),
+			effectiveDate.date(),
+			effectiveDate.dateInt(),
+			row.getScaled(YqColumn.HIGH, QuoteRec.PRICE_SCALE),
+			row.getScaled(YqColumn.LOW, QuoteRec.PRICE_SCALE),
+			row.getScaled(YqColumn.VOL, 0));
+	} // end importRow(CsvRow)
 
-		if (security == null) {
-			MdLog.all("No Moneydance security for ticker symbol [%s]"
-					.formatted(getCol("col.ticker")));
-		} else {
-			storePriceQuoteIfDiff(security, effectiveDate);
+	/**
+	 * Import this row of the comma separated value file. In a backfill, or
+	 * when only the latest date of each security is staged, the quote is held
+	 * in date order with the other quotes of its security until the whole file
+	 * is read. Otherwise it joins a batch of quotes compared together, unless
+	 * an earlier quote of its security was already staged.
+	 *
+	 * @param quote The record imported from the row
+	 */
+	protected void processRow(QuoteRec quote) throws MduException {
+		this.dates.add(quote.effectiveDate());
+		CurrencyType security = getSecurity(quote);
+
+		if (security == null)
+			return;
+
+		if (isHeldBySecurity()) {
+			// a later quote for the same date replaces an earlier one
+			this.heldQuotes.add(security, quote.effDateInt(), quote.price(),
+				quote.highPrice(), quote.lowPrice(), quote.volume());
+		} else if (!this.settled.contains(security)) {
+			this.batch.add(resolve(security, quote.effDateInt(), quote.price(),
+				quote.highPrice(), quote.lowPrice(), quote.volume()));
+
+			if (this.batch.size() >= BATCH_SIZE) {
+				stageBatch();
+			}
 		}
-		this.dates.add(effectiveDate);
 
-	} // end processRow()
+	} // end processRow(QuoteRec)
+
+	/**
+	 * @return True when quotes are held by security until the whole file is read
+	 */
+	private boolean isHeldBySecurity() {
+
+		return this.backfill || this.policy.isLatestOnly();
+	} // end isHeldBySecurity()
 
 	/**
-	 * @param security      The Moneydance security to use
-	 * @param effectiveDate Effective date for quote
+	 * Read what comparing a quote needs from the Moneydance security and its
+	 * snapshots, here on the calling thread, so the work on fork-join workers
+	 * reads no model objects.
+	 *
+	 * @param security   The Moneydance security
+	 * @param effDateInt Effective date as a Moneydance date integer
+	 * @param price      Price, scaled by PRICE_SCALE
+	 * @param highPrice  High price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param lowPrice   Low price scaled by PRICE_SCALE, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param volume     Volume, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @return The quote to compare
 	 */
-	private void storePriceQuoteIfDiff(CurrencyType security, LocalDate effectiveDate) throws MduException {
-		BigDecimal price = new BigDecimal(getCol("col.price"));
+	private SecurityQuote resolve(CurrencyType security, int effDateInt, long price,
+								  long highPrice, long lowPrice, long volume) {
+		Optional<CurrencySnapshot> snapshot = this.snapshots.getSnapshotForDate(security, effDateInt);
+		List<String> notes = List.of();
+
+		if (snapshot.isEmpty()) {
+			this.pricedSnapshot = null;
+			this.snapshotPrice = BigDecimal.ONE;
+		} else if (snapshot.get() != this.pricedSnapshot) {
+			// quotes visited by security often share a snapshot; validate it once
+			List<String> lines = new ArrayList<>();
+			this.pricedSnapshot = snapshot.get();
+			this.snapshotPrice = MdUtil.getAndValidateCurrentSnapshotPrice(security,
+				this.pricedSnapshot, this.locale, lines::add);
+			notes = List.copyOf(lines);
+		}
+
+		return new SecurityQuote(security, security.getName(), security.getTickerSymbol(),
+			effDateInt, price, highPrice, lowPrice, volume,
+			snapshot.map(CurrencySnapshot::getDateInt).orElse(0), this.snapshotPrice, notes);
+	} // end resolve(CurrencyType, int, long, long, long, long)
 
-		int effDateInt = MdUtil.convLocalToDateInt(effectiveDate);
-		SnapshotList ssList = new SnapshotList(security);
-		Optional<CurrencySnapshot> snapshot = ssList.getSnapshotForDate(effDateInt);
-		BigDecimal oldPrice = snapshot.map(ss ->
-			MdUtil.getAndValidateCurrentSnapshotPrice(security, ss, this.locale, this.impWin::addText))
-			.orElse(BigDecimal.ONE);
+	/**
+	 * Compare the batch of quotes, working on different securities concurrently,
+	 * and stage the first quote of each security to differ. Changes staged are
+	 * shown in file order.
+	 */
+	private void stageBatch() throws MduException {
+		Map<CurrencyType, SecurityQuote> staged = KeyedStage.run(this.batch,
+			SecurityQuote::security, (quote, security, stagedQuote, log) -> stagedQuote != null
+				// skip securities we already have
+				? stagedQuote
+				: storePriceQuoteIfDiff(quote, log),
+			this.impWin::addText);
+		this.batch.clear();
+
+		for (Map.Entry<CurrencyType, SecurityQuote> entry : staged.entrySet()) {
+			this.settled.add(entry.getKey());
+			stageChange(entry.getValue());
+		} // end for
+
+	} // end stageBatch()
 
-		// store this quote if it differs and we don't already have this security
-		if ((snapshot.isEmpty() || effDateInt != snapshot.get().getDateInt()
-				|| price.compareTo(oldPrice) != 0) && !this.priceChanges.containsKey(security)) {
+	/**
+	 * Visit the quotes held, by security in date order, comparing batches of
+	 * whole securities at a time. When only the latest date is staged, just
+	 * the last quote of each security is kept.
+	 */
+	private void stageHeldQuotes() throws MduException {
+		boolean latestOnly = this.policy.isLatestOnly();
+
+		this.heldQuotes.forEach((security, dateInt, price, high, low, volume) -> {
+			if (latestOnly && !this.batch.isEmpty() && this.batch.getLast().security() == security) {
+				this.batch.removeLast();
+				// validate the snapshot again, for the notes of the quote kept
+				this.pricedSnapshot = null;
+			} else if (this.batch.size() >= BATCH_SIZE && this.batch.getLast().security() != security) {
+				stageGroups();
+			}
+			this.batch.add(resolve(security, dateInt, price, high, low, volume));
+		});
+		stageGroups();
+
+	} // end stageHeldQuotes()
+
+	/**
+	 * Compare the batch of quotes, working on all the quotes of each security
+	 * at once and on different securities concurrently, and stage the quotes
+	 * chosen.
+	 */
+	private void stageGroups() throws MduException {
+		KeyedGroupWork<SecurityQuote, CurrencyType, List<SecurityQuote>> work =
+			this.backfill ? this::backfillSecurity : this::latestQuote;
+		Map<CurrencyType, List<SecurityQuote>> staged = KeyedStage.runGroups(this.batch,
+			SecurityQuote::security, work, this.impWin::addText);
+		this.batch.clear();
+
+		for (List<SecurityQuote> quotes : staged.values()) {
+			if (this.backfill) {
+				stageBackfill(quotes);
+			} else {
+				stageChange(quotes.getFirst());
+			}
+		} // end for
+
+	} // end stageGroups()
+
+	/**
+	 * Stage a changed price and show the change, unless another import holds
+	 * the security and date.
+	 *
+	 * @param quote The quote to stage
+	 */
+	private void stageChange(SecurityQuote quote) throws MduException {
+		if (stage(quote)) {
+			BigDecimal price = FixedPoint.toBigDecimal(quote.price(), QuoteRec.PRICE_SCALE);
+			BigDecimal oldPrice = quote.snapshotPrice();
 			NumberFormat priceFmt = MdUtil.getCurrencyFormat(this.locale, oldPrice, price);
-			double newPrice = price.doubleValue();
+			double newPrice = FixedPoint.toDouble(quote.price(), QuoteRec.PRICE_SCALE);
 			this.impWin.addText("Change %s (%s) price from %s to %s (<span class=\"%s\">%+.2f%%</span>)"
-				.formatted(security.getName(), security.getTickerSymbol(),
+				.formatted(quote.name(), quote.ticker(),
 				priceFmt.format(oldPrice), priceFmt.format(newPrice),
 				HTMLPane.getSpanCl(price, oldPrice), (newPrice / oldPrice.doubleValue() - 1) * 100));
 
-			storePriceUpdate(ssList, newPrice, effDateInt);
+			reportInvalidQuoteData(quote);
 		}
 
-	} // end storePriceQuoteIfDiff(CurrencyType, LocalDate)
-
-	/**
-	 * @param snapshotList The list of snapshots to use for the Moneydance security to update
-	 * @param newPrice Price quote
-	 * @param importDate Market date integer
-	 */
-	private void storePriceUpdate(SnapshotList snapshotList, double newPrice, int importDate)
-			throws MduException {
-		SecurityHandler securityHandler = new SecurityHandler(snapshotList);
-		String highPrice = getCol("col.high");
-		String lowPrice = getCol("col.low");
-		String volume = getCol("col.vol");
-
-		if (!highPrice.isEmpty() && !lowPrice.isEmpty() && !volume.isEmpty()) {
-			try {
-				securityHandler.storeNewPrice(newPrice, importDate, Long.parseLong(volume),
-					Double.parseDouble(highPrice), Double.parseDouble(lowPrice));
-			} catch (Exception e) {
-				this.impWin.addText(
-					"Exception parsing quote data (volume [%s], high [%s], low [%s]): %s"
-					.formatted(volume, highPrice, lowPrice, e.toString()));
-				securityHandler.storeNewPrice(newPrice, importDate);
+	} // end stageChange(SecurityQuote)
+
+	/**
+	 * Stage the backfill of a security and summarize the prices staged, leaving
+	 * out any dates another import holds.
+	 *
+	 * @param quotes The quotes to stage for the security, in date order
+	 */
+	private void stageBackfill(List<SecurityQuote> quotes) throws MduException {
+		SecurityQuote first = null;
+		SecurityQuote last = null;
+		int numStaged = 0;
+		int numAdded = 0;
+
+		for (SecurityQuote quote : quotes) {
+			if (stage(quote)) {
+				reportInvalidQuoteData(quote);
+
+				if (first == null) {
+					first = quote;
+				}
+				last = quote;
+				++numStaged;
+
+				if (quote.snapshotDateInt() != quote.effDateInt()) {
+					++numAdded;
+				}
 			}
-		} else {
-			securityHandler.storeNewPrice(newPrice, importDate);
+		} // end for
+
+		if (first != null) {
+			this.impWin.addText("Backfill %s (%s) with %d new and %d changed price%s from %s to %s"
+				.formatted(first.name(), first.ticker(), numAdded,
+				numStaged - numAdded, numStaged == 1 ? "" : "s",
+				MdUtil.convDateIntToLocal(first.effDateInt()).format(dateFmt),
+				MdUtil.convDateIntToLocal(last.effDateInt()).format(dateFmt)));
 		}
-		addHandler(securityHandler);
 
-	} // end storePriceUpdate(SnapshotList, double, int)
+	} // end stageBackfill(List<SecurityQuote>)
 
 	/**
-	 * @param marketDate The date string to parse
-	 * @return A corresponding local date instance
+	 * @param quote The quote to stage
+	 * @return False when not staged, as another import holds its security and date
 	 */
-	private LocalDate parseDate(String marketDate) throws MduException {
-		LocalDate mktDate;
-		try {
-			mktDate = LocalDate.parse(marketDate, marketDateFmt);
-		} catch (Exception e) {
-			throw new MduException(e, "Exception parsing date from [%s]: %s", marketDate, e);
+	private boolean stage(SecurityQuote quote) throws MduException {
+
+		return this.priceChanges.add(quote.security(), quote.effDateInt(), quote.price(),
+			quote.highPrice(), quote.lowPrice(), quote.volume());
+	} // end stage(SecurityQuote)
+
+	/**
+	 * @param quotes   The quotes for the security, in date order
+	 * @param security The Moneydance security
+	 * @param log      Receives lines to show for the security
+	 * @return The security's latest quote when it is to be staged, or null
+	 */
+	private List<SecurityQuote> latestQuote(List<SecurityQuote> quotes, CurrencyType security,
+											Consumer<String> log) {
+		SecurityQuote staged = storePriceQuoteIfDiff(quotes.getLast(), log);
+
+		return staged == null ? null : List.of(staged);
+	} // end latestQuote(List<SecurityQuote>, CurrencyType, Consumer<String>)
+
+	/**
+	 * Judge the quotes for a security in date order, each against the price
+	 * then in effect: the latest snapshot or staged quote on or before its date.
+	 *
+	 * @param quotes   The quotes for the security, in date order, one per date
+	 * @param security The Moneydance security
+	 * @param log      Receives lines to show for the security
+	 * @return The quotes to stage, in date order, or null when none
+	 */
+	private List<SecurityQuote> backfillSecurity(List<SecurityQuote> quotes, CurrencyType security,
+												 Consumer<String> log) {
+		List<SecurityQuote> changes = new ArrayList<>();
+		int stagedDateInt = 0;
+		BigDecimal stagedPrice = null;
+
+		for (SecurityQuote quote : quotes) {
+			int effDateInt = quote.effDateInt();
+			quote.notes().forEach(log);
+			int lastDateInt = quote.snapshotDateInt();
+			BigDecimal lastPrice = quote.snapshotPrice();
+
+			if (stagedDateInt > lastDateInt) {
+				lastDateInt = stagedDateInt;
+				lastPrice = stagedPrice;
+			}
+			BigDecimal price = FixedPoint.toBigDecimal(quote.price(), QuoteRec.PRICE_SCALE);
+			boolean onDate = quote.snapshotDateInt() == effDateInt;
+
+			if (this.policy.accepts(lastDateInt, lastPrice, effDateInt, price)) {
+				changes.add(quote);
+				stagedDateInt = effDateInt;
+				stagedPrice = price;
+			} else if (!onDate || price.compareTo(quote.snapshotPrice()) != 0) {
+				this.numSuppressed.incrementAndGet();
+			}
+		} // end for
+
+		return changes.isEmpty() ? null : changes;
+	} // end backfillSecurity(List<SecurityQuote>, CurrencyType, Consumer<String>)
+
+	/**
+	 * @param quote The record being imported
+	 * @return The Moneydance security for the quote's ticker, or null when none
+	 */
+	private CurrencyType getSecurity(QuoteRec quote) {
+
+		return this.tickers.getSecurity(quote.ticker(), ticker ->
+			MdLog.all("No Moneydance security for ticker symbol [%s]".formatted(ticker)));
+	} // end getSecurity(QuoteRec)
+
+	/**
+	 * @param quote The quote being imported
+	 * @param log   Receives lines to show for the quote
+	 * @return The quote to stage, or null when the price is unchanged
+	 */
+	private SecurityQuote storePriceQuoteIfDiff(SecurityQuote quote, Consumer<String> log) {
+		BigDecimal price = FixedPoint.toBigDecimal(quote.price(), QuoteRec.PRICE_SCALE);
+		int effDateInt = quote.effDateInt();
+		quote.notes().forEach(log);
+		BigDecimal oldPrice = quote.snapshotPrice();
+		int lastDateInt = quote.snapshotDateInt();
+
+		// store this quote if it differs enough
+		if (this.policy.accepts(lastDateInt, oldPrice, effDateInt, price))
+			return quote;
+
+		if (lastDateInt != effDateInt || price.compareTo(oldPrice) != 0) {
+			this.numSuppressed.incrementAndGet();
 		}
 
-		return mktDate;
-	} // end parseDate(String)
+		return null;
+	} // end storePriceQuoteIfDiff(SecurityQuote, Consumer<String>)
 
 	/**
-	 * Add a security handler to our collection.
+	 * Report quote data that is present but not all valid; only the price of
+	 * such a quote is stored.
 	 *
-	 * @param handler A deferred update security handler to store
+	 * @param quote The quote being imported
 	 */
-	private void addHandler(SecurityHandler handler) {
-		this.priceChanges.put(handler.getSecurity(), handler);
+	private void reportInvalidQuoteData(SecurityQuote quote) {
+		long highPrice = quote.highPrice();
+		long lowPrice = quote.lowPrice();
+		long volume = quote.volume();
+
+		if (!(FixedPoint.isNumber(highPrice) && FixedPoint.isNumber(lowPrice)
+				&& FixedPoint.isNumber(volume))
+				&& highPrice != FixedPoint.BLANK && lowPrice != FixedPoint.BLANK
+				&& volume != FixedPoint.BLANK) {
+			this.impWin.addText("Invalid %s (%s) quote data (volume %s, high %s, low %s)"
+				.formatted(quote.name(), quote.ticker(),
+				describe(volume, 0), describe(highPrice, QuoteRec.PRICE_SCALE),
+				describe(lowPrice, QuoteRec.PRICE_SCALE)));
+		}
+
+	} // end reportInvalidQuoteData(SecurityQuote)
+
+	/**
+	 * @param scaled A scaled value, FixedPoint.BLANK or FixedPoint.INVALID
+	 * @param scale  The scale of the value
+	 * @return Text describing the value, for diagnostics
+	 */
+	private static String describe(long scaled, int scale) {
 
-	} // end addHandler(SecurityHandler)
+		return FixedPoint.isNumber(scaled)
+			? FixedPoint.toBigDecimal(scaled, scale).toPlainString()
+			: "[invalid]";
+	} // end describe(long, int)
 
 	/**
 	 * Commit any changes to Moneydance.
 	 *
 	 * @return Optional summary of the changes committed
 	 */
-	public Optional<String> commitChanges() {
-		int numPricesSet = this.priceChanges.size();
-
-		this.priceChanges.forEach((security, sHandler) -> sHandler.applyUpdate());
+	public Optional<String> commitChanges() throws MduException {
+		int numPricesSet = this.priceChanges.applyUpdates(this.indexes.getSnapshots());
 		forgetChanges();
 
 		return Optional.of("Changed %d security price%s"
@@ -195,4 +604,12 @@ public class YqImporter extends CsvProcessor implements StagedInterface {
 		return !this.priceChanges.isEmpty();
 	} // end isModified()
 
+	/**
+	 * Close this resource, relinquishing any underlying resources.
+	 */
+	public void close() {
+		forgetChanges();
+
+	} // end close()
+
 } // end class YqImporter